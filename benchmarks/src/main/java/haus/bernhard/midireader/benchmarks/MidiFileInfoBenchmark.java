@@ -0,0 +1,68 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import haus.bernhard.midireader.MidiFileFormatException;
+import haus.bernhard.midireader.MidiFileInfo;
+import haus.bernhard.midireader.MidiReader;
+
+// Metadata extraction only: opening a file and calling getMidiFileInfo() without iterating the events.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MidiFileInfoBenchmark
+{
+    @Param({ "1", "16", "64" })
+    public int trackCount;
+    
+    @Param({ "1024", "65536" })
+    public int noteEventsPerTrack;
+    
+    private long fileLength;
+    private Path file;
+    
+    @Setup(Level.Trial)
+    public void createFile() throws IOException
+    {
+        SyntheticMidiFile midiFile = new SyntheticMidiFile(trackCount,noteEventsPerTrack,true,42);
+        fileLength = midiFile.getBytes().length;
+        file = midiFile.writeTempFile();
+    }
+    
+    @Benchmark
+    public MidiFileInfo readMidiFileInfo(ThroughputCounters counters) throws IOException, MidiFileFormatException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            counters.bytes+=fileLength;
+            return reader.getMidiFileInfo();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import haus.bernhard.midireader.MidiEventCursor;
+import haus.bernhard.midireader.MidiFileFormatException;
+import haus.bernhard.midireader.MidiReader;
+import haus.bernhard.midireader.PackedMidiSequence;
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Full iteration over the merged event sequence. The total number of note events is the same for every track count,
+// so the events/sec counter shows how the per-event cost of the merge develops as the number of tracks grows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MidiReaderBenchmark
+{
+    private static final int TOTAL_NOTE_EVENTS = 256 * 1024;
+    
+    @Param({ "1", "4", "16", "64", "256" })
+    public int trackCount;
+    
+    @Param({ "false", "true" })
+    public boolean runningStatus;
+    
+    private byte[] bytes;
+    private Path file;
+    
+    @Setup(Level.Trial)
+    public void createFile() throws IOException
+    {
+        SyntheticMidiFile midiFile = new SyntheticMidiFile(trackCount,TOTAL_NOTE_EVENTS / trackCount,runningStatus,42);
+        bytes = midiFile.getBytes();
+        file = midiFile.writeTempFile();
+    }
+    
+    @Benchmark
+    public long iterateFile(ThroughputCounters counters) throws IOException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            return iterate(reader,counters);
+        }
+    }
+    
+    @Benchmark
+    public long cursorFile(ThroughputCounters counters) throws IOException, MidiFileFormatException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            MidiEventCursor cursor = reader.cursor();
+            long totalTime = 0,eventCount = 0;
+            while (cursor.advance())
+            {
+                totalTime+=cursor.deltaTime();
+                eventCount++;
+            }
+            counters.events+=eventCount;
+            counters.bytes+=bytes.length;
+            return totalTime;
+        }
+    }
+    
+    @Benchmark
+    public long iterateStream(ThroughputCounters counters) throws IOException, MidiFileFormatException
+    {
+        try (MidiReader reader = new MidiReader(new ByteArrayInputStream(bytes)))
+        {
+            return iterate(reader,counters);
+        }
+    }
+    
+    @Benchmark
+    public int loadPacked(ThroughputCounters counters) throws IOException, MidiFileFormatException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            return countPacked(PackedMidiSequence.load(reader),counters);
+        }
+    }
+    
+    @Benchmark
+    public int loadPackedParallel(ThroughputCounters counters) throws IOException, MidiFileFormatException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            return countPacked(PackedMidiSequence.load(reader,ForkJoinPool.commonPool()),counters);
+        }
+    }
+    
+    private int countPacked(PackedMidiSequence sequence,ThroughputCounters counters)
+    {
+        counters.events+=sequence.getEventCount();
+        counters.bytes+=bytes.length;
+        return sequence.getEventCount();
+    }
+    
+    private long iterate(MidiReader reader,ThroughputCounters counters)
+    {
+        long totalTime = 0,eventCount = 0;
+        for (MidiEvent midiEvent : reader)
+        {
+            totalTime+=midiEvent.getDeltaTime();
+            eventCount++;
+        }
+        counters.events+=eventCount;
+        counters.bytes+=bytes.length;
+        return totalTime;
+    }
+}
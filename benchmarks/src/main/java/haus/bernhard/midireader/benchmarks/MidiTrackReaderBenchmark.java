@@ -0,0 +1,89 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import haus.bernhard.midireader.MidiReader;
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Decoding of a single track. A format 0 file is used, so the merge in MidiReader only ever holds one
+// MidiTrackReader and the score is dominated by MidiTrackReader.readNextMidiEvent().
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MidiTrackReaderBenchmark
+{
+    private static final int NOTE_EVENTS = 256 * 1024;
+    
+    @Param({ "false", "true" })
+    public boolean runningStatus;
+    
+    private byte[] bytes;
+    private Path file;
+    
+    @Setup(Level.Trial)
+    public void createFile() throws IOException
+    {
+        SyntheticMidiFile midiFile = new SyntheticMidiFile(1,NOTE_EVENTS,runningStatus,42);
+        bytes = midiFile.getBytes();
+        file = midiFile.writeTempFile();
+    }
+    
+    @Benchmark
+    public long decodeMappedTrack(ThroughputCounters counters) throws IOException
+    {
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            return decode(reader,counters);
+        }
+    }
+    
+    @Benchmark
+    public long decodeStreamTrack(ThroughputCounters counters) throws IOException
+    {
+        try (MidiReader reader = new MidiReader(new ByteArrayInputStream(bytes)))
+        {
+            return decode(reader,counters);
+        }
+    }
+    
+    private long decode(MidiReader reader,ThroughputCounters counters)
+    {
+        long totalTime = 0,eventCount = 0;
+        for (MidiEvent midiEvent : reader)
+        {
+            totalTime+=midiEvent.getTotalTime();
+            eventCount++;
+        }
+        counters.events+=eventCount;
+        counters.bytes+=bytes.length;
+        return totalTime;
+    }
+}
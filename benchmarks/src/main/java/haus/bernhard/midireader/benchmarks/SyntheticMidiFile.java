@@ -0,0 +1,159 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SyntheticMidiFile
+{
+    public static final int TICKS_PER_QUARTER_NOTE = 480;
+    
+    private byte[] bytes;
+    private long eventCount = 0;
+    
+    public SyntheticMidiFile(int trackCount,int noteEventsPerTrack,boolean runningStatus,long seed)
+    {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[] { 0x4D, 0x54, 0x68, 0x64, 0x00, 0x00, 0x00, 0x06 });
+        writeShort(out,trackCount==1 ? 0 : 1);
+        writeShort(out,trackCount);
+        writeShort(out,TICKS_PER_QUARTER_NOTE);
+        for (int trackNumber=0; trackNumber<trackCount; trackNumber++)
+        {
+            byte[] track = createTrack(trackNumber,noteEventsPerTrack,runningStatus,random);
+            out.writeBytes(new byte[] { 0x4D, 0x54, 0x72, 0x6B });
+            writeInt(out,track.length);
+            out.writeBytes(track);
+        }
+        bytes = out.toByteArray();
+    }
+    
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+    
+    public long getEventCount()
+    {
+        return eventCount;
+    }
+    
+    public Path writeTempFile() throws IOException
+    {
+        Path file = Files.createTempFile("midireader-benchmark",".mid");
+        file.toFile().deleteOnExit();
+        Files.write(file,bytes);
+        return file;
+    }
+    
+    private byte[] createTrack(int trackNumber,int noteEventsPerTrack,boolean runningStatus,Random random)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int channel = trackNumber % 16;
+        writeMeta(out,0,0x03,("Track "+trackNumber).getBytes());
+        if (trackNumber==0)
+        {
+            writeMeta(out,0,0x51,new byte[] { 0x07, (byte) 0xA1, 0x20 });
+            writeMeta(out,0,0x58,new byte[] { 4, 2, 24, 8 });
+        }
+        writeEvent(out,0,0xC0 | channel,trackNumber % 128);
+        writeEvent(out,0,0xB0 | channel,7,100);
+        
+        int runningStatusByte = -1;
+        int[] pendingNotes = new int[noteEventsPerTrack / 2 + 1];
+        int pendingNoteCount = 0;
+        for (int i=0; i<noteEventsPerTrack; i++)
+        {
+            int deltaTime = random.nextInt(4) * TICKS_PER_QUARTER_NOTE / 8;
+            boolean noteOn = (pendingNoteCount==0) || ((i<noteEventsPerTrack - pendingNoteCount) && random.nextBoolean());
+            int status,noteNumber,velocity;
+            if (noteOn)
+            {
+                status = 0x90 | channel;
+                noteNumber = 36 + random.nextInt(60);
+                velocity = 1 + random.nextInt(127);
+                pendingNotes[pendingNoteCount++] = noteNumber;
+            }
+            else
+            {
+                // With running status, note-offs are encoded as velocity-0 note-ons so that the status byte can be omitted.
+                status = runningStatus ? 0x90 | channel : 0x80 | channel;
+                noteNumber = pendingNotes[--pendingNoteCount];
+                velocity = 0;
+            }
+            writeVariableLengthQuantity(out,deltaTime);
+            if ((! runningStatus) || (status!=runningStatusByte))
+                out.write(status);
+            out.write(noteNumber);
+            out.write(velocity);
+            runningStatusByte = status;
+            eventCount++;
+        }
+        writeMeta(out,0,0x2F,new byte[0]);
+        return out.toByteArray();
+    }
+    
+    private void writeEvent(ByteArrayOutputStream out,int deltaTime,int status,int... data)
+    {
+        writeVariableLengthQuantity(out,deltaTime);
+        out.write(status);
+        for (int value : data)
+            out.write(value);
+        eventCount++;
+    }
+    
+    private void writeMeta(ByteArrayOutputStream out,int deltaTime,int type,byte[] content)
+    {
+        writeVariableLengthQuantity(out,deltaTime);
+        out.write(0xFF);
+        out.write(type);
+        writeVariableLengthQuantity(out,content.length);
+        out.writeBytes(content);
+        eventCount++;
+    }
+    
+    private static void writeVariableLengthQuantity(ByteArrayOutputStream out,int value)
+    {
+        int shift = 21;
+        while ((shift>0) && ((value>>shift)==0))
+            shift-=7;
+        for (; shift>0; shift-=7)
+            out.write(((value>>shift) & 0x7F) | 0x80);
+        out.write(value & 0x7F);
+    }
+    
+    private static void writeShort(ByteArrayOutputStream out,int value)
+    {
+        out.write(value>>8);
+        out.write(value);
+    }
+    
+    private static void writeInt(ByteArrayOutputStream out,int value)
+    {
+        writeShort(out,value>>>16);
+        writeShort(out,value);
+    }
+}
@@ -0,0 +1,223 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+// Reads MIDI files with positional reads on an AsynchronousFileChannel, so that the calling thread does not block on the disk. On
+// Linux and macOS the channel performs the reads as blocking reads on its executor's threads, which do wait. For the file info,
+// only the header, the chunk headers and the events of each track before its first note are needed: each chunk is read together
+// with a prefix of its events, and read again with twice the prefix while its first note lies beyond it. The reads are issued one
+// after the other, and the decoding runs on the given executor. Cancelling the returned future closes the channel, which fails the
+// read in progress and ends the operation.
+final class AsyncMidiFileReader
+{
+    private static final int HEADER_SIZE = 14,CHUNK_HEADER_SIZE = 8;
+    private static final int INITIAL_PREFIX_SIZE = 4096;
+    private static final int TRACK_CHUNK_ID = 0x4D54726B; // "MTrk"
+    
+    private Path file;
+    private Executor executor;
+    private AsynchronousFileChannel channel;
+    
+    private AsyncMidiFileReader(Path file,Executor executor,AsynchronousFileChannel channel)
+    {
+        this.file = file;
+        this.executor = executor;
+        this.channel = channel;
+    }
+    
+    static CompletableFuture<MidiFileInfo> readMidiFileInfo(Path file,Executor executor)
+    {
+        JfrEvents.FileInfoRead infoEvent = JfrEvents.FileInfoRead.beginIfEnabled();
+        return open(file,executor,reader -> reader.read(0,HEADER_SIZE)
+            .thenCompose(header -> reader.decode(() -> MidiReader.readHeader(new ByteBufferSource(header),file.toString())))
+            .thenCompose(midiFileInfo -> reader.readTrackInfos(midiFileInfo,0,HEADER_SIZE,INITIAL_PREFIX_SIZE))
+            .thenApply(midiFileInfo -> {
+                if (infoEvent!=null)
+                    infoEvent.finish(midiFileInfo);
+                return midiFileInfo;
+            }));
+    }
+    
+    static CompletableFuture<PackedMidiSequence> loadSequence(Path file,Executor executor)
+    {
+        return open(file,executor,reader -> reader.readWholeFile().thenCompose(fileImage -> reader.decode(() -> {
+            try (MidiReader midiReader = new MidiReader(fileImage,file.toString()))
+            {
+                return PackedMidiSequence.load(midiReader);
+            }
+        })));
+    }
+    
+    
+    // Opens the channel (on the executor's threads, if it is an ExecutorService) and closes it when the returned future completes
+    // in any way, including cancellation. The future completes with the exception thrown by a step, rather than a wrapper of it.
+    private static <T> CompletableFuture<T> open(Path file,Executor executor,Function<AsyncMidiFileReader,CompletableFuture<T>> operation)
+    {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        JfrEvents.FileOpen openEvent = JfrEvents.FileOpen.beginIfEnabled();
+        AsynchronousFileChannel channel;
+        try
+        {
+            if (executor instanceof ExecutorService)
+                channel = AsynchronousFileChannel.open(file,Set.of(StandardOpenOption.READ),(ExecutorService) executor);
+            else
+                channel = AsynchronousFileChannel.open(file,StandardOpenOption.READ);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (openEvent!=null)
+            openEvent.finish(file.toString(),0,false);
+        result.whenComplete((value,error) -> closeQuietly(channel));
+        operation.apply(new AsyncMidiFileReader(file,executor,channel)).whenComplete((value,error) -> {
+            if (error==null)
+                result.complete(value);
+            else
+                result.completeExceptionally(((error instanceof CompletionException) && (error.getCause()!=null)) ? error.getCause() : error);
+        });
+        return result;
+    }
+    
+    private static void closeQuietly(AsynchronousFileChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e) // Nothing was written, so nothing is lost.
+        {
+        }
+    }
+    
+    // Decodes the preamble of each track from a prefix of its chunk, starting with the given track at the given position in the file.
+    private CompletableFuture<MidiFileInfo> readTrackInfos(MidiFileInfo midiFileInfo,int trackNumber,long position,int prefixSize)
+    {
+        if (trackNumber==midiFileInfo.getNumberOfTracks())
+            return CompletableFuture.completedFuture(midiFileInfo);
+        return read(position,CHUNK_HEADER_SIZE + prefixSize)
+            .thenCompose(chunkPrefix -> decode(() -> readTrackInfo(midiFileInfo,trackNumber,chunkPrefix)))
+            .thenCompose(chunkLength -> {
+                if (chunkLength<0)
+                    return readTrackInfos(midiFileInfo,trackNumber,position,(int) Math.min(2L*prefixSize,Integer.MAX_VALUE - CHUNK_HEADER_SIZE));
+                return readTrackInfos(midiFileInfo,trackNumber + 1,position + chunkLength,INITIAL_PREFIX_SIZE);
+            });
+    }
+    
+    // Adds the info of the track to the file info and returns the length of its chunk (header included), or returns -1 if the
+    // prefix of the chunk ends before the track's first note.
+    private static long readTrackInfo(MidiFileInfo midiFileInfo,int trackNumber,ByteBuffer chunkPrefix) throws IOException, MidiFileFormatException
+    {
+        if (chunkPrefix.limit()<CHUNK_HEADER_SIZE)
+            throw new MidiFileFormatException("Unexpected end of file");
+        if (chunkPrefix.getInt(0)!=TRACK_CHUNK_ID)
+            throw new MidiFileFormatException("Invalid file format (bad track-section header)");
+        long chunkLength = (chunkPrefix.getInt(4) & 0xFFFFFFFFL) + CHUNK_HEADER_SIZE;
+        boolean wholeChunk = chunkPrefix.limit()>=chunkLength;
+        if (wholeChunk)
+            chunkPrefix.limit((int) chunkLength);
+        else if (chunkPrefix.limit()<chunkPrefix.capacity())
+            throw new MidiFileFormatException("Unexpected end of file");
+        try
+        {
+            midiFileInfo.addTrack(new MidiTrackReader(new ByteBufferSource(chunkPrefix),trackNumber).readMidiTrackInfo(midiFileInfo));
+            return chunkLength;
+        }
+        catch (IOException | MidiFileFormatException e)
+        {
+            // Decoding from a prefix fails where the prefix ends; the fields set on the file info so far are set again by the next attempt.
+            if (wholeChunk)
+                throw e;
+            return -1;
+        }
+    }
+    
+    private CompletableFuture<ByteBuffer> readWholeFile()
+    {
+        long size;
+        try
+        {
+            size = channel.size();
+        }
+        catch (IOException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (size>Integer.MAX_VALUE)
+            return CompletableFuture.failedFuture(new MidiFileFormatException("File too large: "+size+" bytes"));
+        return read(0,(int) size);
+    }
+    
+    // Reads the given number of bytes at the given position, or fewer at the end of the file, into a buffer that is flipped for reading.
+    private CompletableFuture<ByteBuffer> read(long position,int length)
+    {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.read(buffer,position,buffer,new CompletionHandler<Integer,ByteBuffer>()
+        {
+            public void completed(Integer byteCount,ByteBuffer buffer)
+            {
+                if ((byteCount<0) || (! buffer.hasRemaining()))
+                    future.complete(buffer.flip());
+                else
+                    channel.read(buffer,position + buffer.position(),buffer,this);
+            }
+            
+            public void failed(Throwable e,ByteBuffer buffer)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+    
+    // Runs the step on the executor and completes the returned future with its result or with the exception that it throws.
+    private <T> CompletableFuture<T> decode(Callable<T> step)
+    {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        executor.execute(() -> {
+            try
+            {
+                future.complete(step.call());
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,58 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+final class ByteBufferSource extends ByteSource
+{
+    private ByteBuffer buffer;
+    
+    public ByteBufferSource(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+    
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+    
+    public int read()
+    {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+    
+    public void readFully(byte[] bytes,int offset,int byteCount) throws EOFException
+    {
+        if (buffer.remaining()<byteCount)
+            throw new EOFException("Unexpected end of file");
+        buffer.get(bytes,offset,byteCount);
+    }
+    
+    public void skip(long byteCount) throws EOFException
+    {
+        if (buffer.remaining()<byteCount)
+            throw new EOFException("Unexpected end of file");
+        buffer.position(buffer.position() + (int) byteCount);
+    }
+}
@@ -0,0 +1,141 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import haus.bernhard.midireader.midievent.MidiEvent;
+import haus.bernhard.midireader.util.FileHelpers;
+
+// A MIDI file loaded from a MidiFileCache entry. The merged events are decoded from the memory-mapped entry
+// and MidiEvent objects are created only as they are iterated.
+public class CachedMidiFile implements Iterable<MidiEvent>
+{
+    private MidiFileInfo midiFileInfo;
+    private TempoMap tempoMap;
+    private int eventCount;
+    private ByteBuffer events;
+    private Channel[][] channels;
+    
+    CachedMidiFile(MidiFileInfo midiFileInfo,TempoMap tempoMap,int eventCount,ByteBuffer events)
+    {
+        this.midiFileInfo = midiFileInfo;
+        this.tempoMap = tempoMap;
+        this.eventCount = eventCount;
+        this.events = events;
+        channels = new Channel[midiFileInfo.getNumberOfTracks()][16];
+    }
+    
+    public MidiFileInfo getMidiFileInfo()
+    {
+        return midiFileInfo;
+    }
+    
+    public TempoMap getTempoMap()
+    {
+        return tempoMap;
+    }
+    
+    public int getEventCount()
+    {
+        return eventCount;
+    }
+    
+    public Iterator<MidiEvent> iterator()
+    {
+        return new CachedMidiEventIterator();
+    }
+    
+    
+    private class CachedMidiEventIterator implements Iterator<MidiEvent>
+    {
+        private ByteBuffer eventBytes = events.duplicate();
+        private int eventIndex = 0;
+        private long previousTick = 0;
+        
+        public boolean hasNext()
+        {
+            return eventIndex<eventCount;
+        }
+        
+        public MidiEvent next()
+        {
+            if (! hasNext())
+                throw new NoSuchElementException();
+            long tick = previousTick + readVariableLengthQuantity(eventBytes);
+            int trackNumber = (int) readVariableLengthQuantity(eventBytes);
+            eventIndex++;
+            int status = eventBytes.get() & 0xFF,data1 = 0,data2 = 0;
+            ByteBuffer payload = null;
+            if (status<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+            {
+                data1 = eventBytes.get() & 0xFF;
+                if (MidiTrackReader.hasTwoDataBytes(status))
+                    data2 = eventBytes.get() & 0xFF;
+            }
+            else
+            {
+                if (status==MidiTrackReader.STATUS_META)
+                    data1 = eventBytes.get() & 0xFF;
+                int payloadLength = (int) readVariableLengthQuantity(eventBytes);
+                payload = eventBytes.slice(eventBytes.position(),payloadLength).asReadOnlyBuffer();
+                eventBytes.position(eventBytes.position() + payloadLength);
+            }
+            MidiEvent midiEvent = MidiTrackReader.createMidiEvent(status,data1,data2,(int) (tick - previousTick),tick,status<0xF0 ? getChannel(trackNumber,status & 0x0F) : null,payload);
+            midiEvent.setTotalMicroseconds(tempoMap.tickToMicros(tick));
+            previousTick = tick;
+            return midiEvent;
+        }
+        
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    
+    private static long readVariableLengthQuantity(ByteBuffer buffer)
+    {
+        long value = 0;
+        int b;
+        do
+        {
+            b = buffer.get();
+            value = (value<<7) | (b & 0x7F);
+        }
+        while ((b & FileHelpers.MSB_MASK)!=0);
+        return value;
+    }
+    
+    private Channel getChannel(int trackNumber,int channelNumber)
+    {
+        Channel channel = channels[trackNumber][channelNumber];
+        if (channel==null)
+        {
+            MidiTrackInfo trackInfo = midiFileInfo.getTrackInfo(trackNumber);
+            channel = trackInfo==null ? null : trackInfo.getChannel(channelNumber);
+            channels[trackNumber][channelNumber] = channel = (channel==null ? new Channel(trackNumber,channelNumber) : channel);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,276 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package haus.bernhard.midireader;
+
+import java.util.Arrays;
+
+import haus.bernhard.midireader.midievent.StateChangeMidiEvent;
+
+// The controllers, program, pitch wheel and registered/non-registered parameters of the 16 channels of a track, as set by the
+// state-change events fed to update(). Values that were never set (or were reset by a Reset All Controllers message) are -1.
+// Everything is kept in one flat byte array that is copied on the first write after snapshot(), so that updates cost O(1)
+// and snapshots share the array for as long as neither side changes.
+public final class ChannelState
+{
+    public static final int PITCH_WHEEL_CENTER = 8192;
+    public static final int REGISTERED_PARAMETER_PITCH_BEND_SENSITIVITY = 0,REGISTERED_PARAMETER_FINE_TUNING = 1,REGISTERED_PARAMETER_COARSE_TUNING = 2,
+            REGISTERED_PARAMETER_TUNING_PROGRAM = 3,REGISTERED_PARAMETER_TUNING_BANK = 4,REGISTERED_PARAMETER_MODULATION_DEPTH_RANGE = 5,
+            REGISTERED_PARAMETER_MPE_CONFIGURATION = 6,REGISTERED_PARAMETER_COUNT = 7;
+    
+    private static final int CONTROL_CHANGE_DATA_ENTRY_LSB = 38,CONTROL_CHANGE_NRPN_LSB = 98,CONTROL_CHANGE_NRPN_MSB = 99,
+            CONTROL_CHANGE_RPN_LSB = 100,CONTROL_CHANGE_RPN_MSB = 101;
+    private static final int PARAMETER_NONE = 0,PARAMETER_REGISTERED = 1,PARAMETER_NON_REGISTERED = 2;
+    // Per channel: the 128 controllers, the program, the pitch wheel, the kind of parameter selected for data entry, the value of the
+    // selected non-registered parameter and the values of the registered parameters, each value as an MSB followed by an LSB.
+    private static final int PROGRAM = 128,PITCH_WHEEL_LSB = 129,PITCH_WHEEL_MSB = 130,PARAMETER_KIND = 131,NRPN_VALUE = 132,RPN_VALUES = 134,
+            VALUES_PER_CHANNEL = RPN_VALUES + 2*REGISTERED_PARAMETER_COUNT;
+    
+    private byte[] values;
+    private boolean shared;
+    
+    public ChannelState()
+    {
+        values = new byte[16*VALUES_PER_CHANNEL];
+        Arrays.fill(values,(byte) -1);
+        for (int channelNumber=0; channelNumber<16; channelNumber++)
+            values[channelNumber*VALUES_PER_CHANNEL + PARAMETER_KIND] = PARAMETER_NONE;
+    }
+    
+    private ChannelState(byte[] values)
+    {
+        this.values = values;
+        shared = true;
+    }
+    
+    // Returns a copy of the current state that is unaffected by later updates of this one (and vice versa).
+    public ChannelState snapshot()
+    {
+        shared = true;
+        return new ChannelState(values);
+    }
+    
+    public void update(StateChangeMidiEvent midiEvent)
+    {
+        update(((11 + midiEvent.getStateChangeType().ordinal())<<4) | midiEvent.getChannelNumber(),midiEvent.getValue1(),midiEvent.getValue2());
+    }
+    
+    // Applies a raw channel message; messages other than control changes, program changes and pitch wheel changes are ignored.
+    public void update(int status,int data1,int data2)
+    {
+        int command = status>>4;
+        if ((command<11) || (command==13) || (command>14))
+            return;
+        int offset = (status & 0x0F)*VALUES_PER_CHANNEL;
+        if (shared)
+        {
+            values = values.clone();
+            shared = false;
+        }
+        if (command==12)
+            values[offset + PROGRAM] = (byte) data1;
+        else if (command==14)
+        {
+            values[offset + PITCH_WHEEL_LSB] = (byte) data1;
+            values[offset + PITCH_WHEEL_MSB] = (byte) data2;
+        }
+        else if (data1==StateChangeMidiEvent.CONTROL_CHANGE_RESET_ALL_CONTROLLERS)
+            resetControllers(offset);
+        else if (data1<StateChangeMidiEvent.CONTROL_CHANGE_ALL_SOUND_OFF)
+        {
+            values[offset + data1] = (byte) data2;
+            switch (data1)
+            {
+                case CONTROL_CHANGE_RPN_LSB : case CONTROL_CHANGE_RPN_MSB :
+                    selectParameter(offset,PARAMETER_REGISTERED,CONTROL_CHANGE_RPN_MSB,CONTROL_CHANGE_RPN_LSB);
+                    break;
+                case CONTROL_CHANGE_NRPN_LSB : case CONTROL_CHANGE_NRPN_MSB :
+                    selectParameter(offset,PARAMETER_NON_REGISTERED,CONTROL_CHANGE_NRPN_MSB,CONTROL_CHANGE_NRPN_LSB);
+                    values[offset + NRPN_VALUE] = values[offset + NRPN_VALUE + 1] = -1;
+                    break;
+                case StateChangeMidiEvent.CONTROL_CHANGE_DATA_ENTRY_MSB : case CONTROL_CHANGE_DATA_ENTRY_LSB :
+                case StateChangeMidiEvent.CONTROL_CHANGE_DATA_INCREMENT : case StateChangeMidiEvent.CONTROL_CHANGE_DATA_DECREMENT :
+                    enterData(offset,data1,data2);
+                    break;
+            }
+        }
+    }
+    
+    public int getController(int channelNumber,int controller)
+    {
+        return values[channelNumber*VALUES_PER_CHANNEL + controller];
+    }
+    
+    public int getProgram(int channelNumber)
+    {
+        return values[channelNumber*VALUES_PER_CHANNEL + PROGRAM];
+    }
+    
+    // Returns the 14-bit pitch wheel value, which is PITCH_WHEEL_CENTER if it was never set.
+    public int getPitchWheel(int channelNumber)
+    {
+        int offset = channelNumber*VALUES_PER_CHANNEL;
+        return values[offset + PITCH_WHEEL_LSB]<0 ? PITCH_WHEEL_CENTER : (values[offset + PITCH_WHEEL_MSB]<<7) | values[offset + PITCH_WHEEL_LSB];
+    }
+    
+    public boolean isSustainPedalDown(int channelNumber)
+    {
+        return getController(channelNumber,StateChangeMidiEvent.CONTROL_CHANGE_DAMPER_PEDAL)>=64;
+    }
+    
+    // Returns the 14-bit value of one of the registered parameters 0 to REGISTERED_PARAMETER_COUNT - 1 (a missing LSB counting as 0).
+    public int getRegisteredParameter(int channelNumber,int parameterNumber)
+    {
+        if ((parameterNumber<0) || (parameterNumber>=REGISTERED_PARAMETER_COUNT))
+            throw new IllegalArgumentException("Registered parameter number must be between 0 and "+(REGISTERED_PARAMETER_COUNT - 1)+": "+parameterNumber);
+        return getParameterValue(channelNumber*VALUES_PER_CHANNEL + RPN_VALUES + 2*parameterNumber);
+    }
+    
+    // Returns the registered parameter currently selected for data entry, or -1 if none is.
+    public int getSelectedRegisteredParameter(int channelNumber)
+    {
+        return getSelectedParameter(channelNumber*VALUES_PER_CHANNEL,PARAMETER_REGISTERED,CONTROL_CHANGE_RPN_MSB,CONTROL_CHANGE_RPN_LSB);
+    }
+    
+    // Returns the non-registered parameter currently selected for data entry, or -1 if none is. Only the value of the selected
+    // non-registered parameter is kept, since their meaning is device specific.
+    public int getSelectedNonRegisteredParameter(int channelNumber)
+    {
+        return getSelectedParameter(channelNumber*VALUES_PER_CHANNEL,PARAMETER_NON_REGISTERED,CONTROL_CHANGE_NRPN_MSB,CONTROL_CHANGE_NRPN_LSB);
+    }
+    
+    public int getNonRegisteredParameterValue(int channelNumber)
+    {
+        return getParameterValue(channelNumber*VALUES_PER_CHANNEL + NRPN_VALUE);
+    }
+    
+    // Returns the events that bring a channel to this state, packed as status<<16 | data1<<8 | data2: the controllers first (so that
+    // bank select precedes the program change), then the registered parameters (followed by deselecting them), then the program
+    // and then the pitch wheel.
+    int[] toChaseEvents()
+    {
+        int count = 0;
+        int[] chaseEvents = new int[16*(VALUES_PER_CHANNEL + 2*REGISTERED_PARAMETER_COUNT + 2)];
+        for (int channelNumber=0; channelNumber<16; channelNumber++)
+        {
+            int offset = channelNumber*VALUES_PER_CHANNEL,controlChange = (0xB0 | channelNumber)<<16;
+            for (int controller=0; controller<128; controller++)
+                if ((values[offset + controller]>=0) && isChased(controller))
+                    chaseEvents[count++] = controlChange | (controller<<8) | values[offset + controller];
+            int firstParameterEvent = count;
+            for (int parameterNumber=0; parameterNumber<REGISTERED_PARAMETER_COUNT; parameterNumber++)
+            {
+                int valueOffset = offset + RPN_VALUES + 2*parameterNumber;
+                if (values[valueOffset]<0)
+                    continue;
+                chaseEvents[count++] = controlChange | (CONTROL_CHANGE_RPN_MSB<<8);
+                chaseEvents[count++] = controlChange | (CONTROL_CHANGE_RPN_LSB<<8) | parameterNumber;
+                chaseEvents[count++] = controlChange | (StateChangeMidiEvent.CONTROL_CHANGE_DATA_ENTRY_MSB<<8) | values[valueOffset];
+                if (values[valueOffset + 1]>=0)
+                    chaseEvents[count++] = controlChange | (CONTROL_CHANGE_DATA_ENTRY_LSB<<8) | values[valueOffset + 1];
+            }
+            if (count>firstParameterEvent)
+            {
+                chaseEvents[count++] = controlChange | (CONTROL_CHANGE_RPN_MSB<<8) | 127;
+                chaseEvents[count++] = controlChange | (CONTROL_CHANGE_RPN_LSB<<8) | 127;
+            }
+            if (values[offset + PROGRAM]>=0)
+                chaseEvents[count++] = ((0xC0 | channelNumber)<<16) | (values[offset + PROGRAM]<<8);
+            if (values[offset + PITCH_WHEEL_LSB]>=0)
+                chaseEvents[count++] = ((0xE0 | channelNumber)<<16) | (values[offset + PITCH_WHEEL_LSB]<<8) | values[offset + PITCH_WHEEL_MSB];
+        }
+        return Arrays.copyOf(chaseEvents,count);
+    }
+    
+    // Resets what Reset All Controllers resets (RP-015): all controllers except bank select, volume and pan, the pitch wheel and the
+    // parameter selection, but not the program or the parameter values.
+    private void resetControllers(int offset)
+    {
+        for (int controller=StateChangeMidiEvent.CONTROL_CHANGE_MODULATION; controller<StateChangeMidiEvent.CONTROL_CHANGE_ALL_SOUND_OFF; controller++)
+            if ((controller!=StateChangeMidiEvent.CONTROL_CHANGE_VOLUME) && (controller!=StateChangeMidiEvent.CONTROL_CHANGE_PAN) && (controller!=32))
+                values[offset + controller] = -1;
+        values[offset + PITCH_WHEEL_LSB] = values[offset + PITCH_WHEEL_MSB] = -1;
+        values[offset + PARAMETER_KIND] = PARAMETER_NONE;
+    }
+    
+    // Either half of the parameter number selects that kind of parameter, unless the number becomes the null parameter 127/127.
+    private void selectParameter(int offset,int kind,int msbController,int lsbController)
+    {
+        boolean isNull = (values[offset + msbController]==127) && (values[offset + lsbController]==127);
+        values[offset + PARAMETER_KIND] = (byte) (isNull ? PARAMETER_NONE : kind);
+    }
+    
+    private int getSelectedParameter(int offset,int kind,int msbController,int lsbController)
+    {
+        if (values[offset + PARAMETER_KIND]!=kind)
+            return -1;
+        return (Math.max(values[offset + msbController],0)<<7) | Math.max(values[offset + lsbController],0);
+    }
+    
+    private int getParameterValue(int valueOffset)
+    {
+        return values[valueOffset]<0 ? -1 : (values[valueOffset]<<7) | Math.max(values[valueOffset + 1],0);
+    }
+    
+    private void enterData(int offset,int controller,int data)
+    {
+        int valueOffset;
+        if (values[offset + PARAMETER_KIND]==PARAMETER_NON_REGISTERED)
+            valueOffset = offset + NRPN_VALUE;
+        else
+        {
+            int parameterNumber = getSelectedParameter(offset,PARAMETER_REGISTERED,CONTROL_CHANGE_RPN_MSB,CONTROL_CHANGE_RPN_LSB);
+            if ((parameterNumber<0) || (parameterNumber>=REGISTERED_PARAMETER_COUNT))
+                return;
+            valueOffset = offset + RPN_VALUES + 2*parameterNumber;
+        }
+        if (controller==StateChangeMidiEvent.CONTROL_CHANGE_DATA_ENTRY_MSB)
+            values[valueOffset] = (byte) data;
+        else if (controller==CONTROL_CHANGE_DATA_ENTRY_LSB)
+        {
+            values[valueOffset + 1] = (byte) data;
+            if (values[valueOffset]<0)
+                values[valueOffset] = 0;
+        }
+        else
+        {
+            int value = Math.max(getParameterValue(valueOffset),0);
+            value = controller==StateChangeMidiEvent.CONTROL_CHANGE_DATA_INCREMENT ? Math.min(value + 1,16383) : Math.max(value - 1,0);
+            values[valueOffset] = (byte) (value>>7);
+            values[valueOffset + 1] = (byte) (value & 0x7F);
+        }
+    }
+    
+    // Data entry and RPN/NRPN selection only make sense in the order they were sent (registered parameters are chased separately),
+    // and channel mode messages are commands rather than state, so neither is replayed.
+    private static boolean isChased(int controller)
+    {
+        switch (controller)
+        {
+            case StateChangeMidiEvent.CONTROL_CHANGE_DATA_ENTRY_MSB : case CONTROL_CHANGE_DATA_ENTRY_LSB :
+            case StateChangeMidiEvent.CONTROL_CHANGE_DATA_INCREMENT : case StateChangeMidiEvent.CONTROL_CHANGE_DATA_DECREMENT :
+            case CONTROL_CHANGE_NRPN_LSB : case CONTROL_CHANGE_NRPN_MSB : case CONTROL_CHANGE_RPN_LSB : case CONTROL_CHANGE_RPN_MSB :
+                return false;
+            default :
+                return controller<StateChangeMidiEvent.CONTROL_CHANGE_ALL_SOUND_OFF;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Bounded single-producer single-consumer ring of events. The producer publishes a slot by advancing the volatile tail after
+// writing it, and the consumer releases it by advancing the volatile head, so neither side takes a lock.
+final class EventRing
+{
+    private MidiEvent[] slots;
+    private int mask;
+    private volatile long head = 0,tail = 0;
+    private volatile boolean finished = false;
+    
+    public EventRing(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(1,capacity - 1)) << 1;
+        slots = new MidiEvent[size];
+        mask = size - 1;
+    }
+    
+    public int getCapacity()
+    {
+        return slots.length;
+    }
+    
+    public int size()
+    {
+        return (int) (tail - head);
+    }
+    
+    // Producer side.
+    public boolean offer(MidiEvent midiEvent)
+    {
+        long currentTail = tail;
+        if (currentTail - head==slots.length)
+            return false;
+        slots[(int) currentTail & mask] = midiEvent;
+        tail = currentTail + 1;
+        return true;
+    }
+    
+    // Producer side: no more events will be offered.
+    public void finish()
+    {
+        finished = true;
+    }
+    
+    // Consumer side. Returns null if the ring is empty.
+    public MidiEvent poll()
+    {
+        long currentHead = head;
+        if (currentHead==tail)
+            return null;
+        int index = (int) currentHead & mask;
+        MidiEvent midiEvent = slots[index];
+        slots[index] = null;
+        head = currentHead + 1;
+        return midiEvent;
+    }
+    
+    // Consumer side: true once the ring is empty and the producer has finished.
+    public boolean isDrained()
+    {
+        return finished && (head==tail);
+    }
+}
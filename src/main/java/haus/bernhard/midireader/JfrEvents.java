@@ -0,0 +1,294 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events of the reader and the player. Each is recorded only while a recording enables it in its settings
+// (custom events are enabled by default, subject to their threshold); otherwise the events are not even allocated, as they are
+// created through beginIfEnabled() (or LateDispatch.record()), which asks a probe instance of the event class first.
+// MidiRecordingAnalyzer summarizes a recording.
+final class JfrEvents
+{
+    static final String CATEGORY = "MIDI Reader",NAME_PREFIX = "haus.bernhard.midireader.";
+    static final String FILE_OPEN = NAME_PREFIX + "FileOpen",FILE_INFO_READ = NAME_PREFIX + "FileInfoRead",TRACK_DECODE = NAME_PREFIX + "TrackDecode";
+    static final String MERGE_STALL = NAME_PREFIX + "MergeStall",LATE_DISPATCH = NAME_PREFIX + "LateDispatch";
+    static final String PHASE_PREAMBLE = "preamble",PHASE_INDEX = "index",PHASE_TEMPO_MAP = "tempo map";
+    
+    @Name(FILE_OPEN)
+    @Label("MIDI File Open")
+    @Category(CATEGORY)
+    @Description("Mapping a MIDI file into memory, or wrapping a stream, before its header is read")
+    static final class FileOpen extends Event
+    {
+        private static final FileOpen PROBE = new FileOpen();
+        
+        @Label("Path")
+        String path;
+        @Label("Mapped Size")
+        @DataAmount
+        long size;
+        @Label("Mapped")
+        boolean mapped;
+        
+        static FileOpen beginIfEnabled()
+        {
+            return beginEvent(PROBE,FileOpen::new);
+        }
+        
+        void finish(String path,long size,boolean mapped)
+        {
+            end();
+            if (shouldCommit())
+            {
+                this.path = path;
+                this.size = size;
+                this.mapped = mapped;
+                commit();
+            }
+        }
+    }
+    
+    @Name(FILE_INFO_READ)
+    @Label("MIDI File Info Read")
+    @Category(CATEGORY)
+    @Description("Reading the header of a MIDI file and the events of each track before its first note")
+    static final class FileInfoRead extends Event
+    {
+        private static final FileInfoRead PROBE = new FileInfoRead();
+        
+        @Label("Path")
+        String path;
+        @Label("File Format")
+        String fileFormat;
+        @Label("Track Count")
+        int trackCount;
+        @Label("Ticks per Quarter Note")
+        int ticksPerQuarterNote;
+        
+        static FileInfoRead beginIfEnabled()
+        {
+            return beginEvent(PROBE,FileInfoRead::new);
+        }
+        
+        void finish(MidiFileInfo midiFileInfo)
+        {
+            end();
+            if (shouldCommit())
+            {
+                path = midiFileInfo.getFileName();
+                fileFormat = midiFileInfo.getFileFormat().name();
+                trackCount = midiFileInfo.getNumberOfTracks();
+                ticksPerQuarterNote = midiFileInfo.getTicksPerQuarterNote();
+                commit();
+            }
+        }
+    }
+    
+    @Name(TRACK_DECODE)
+    @Label("MIDI Track Decode")
+    @Category(CATEGORY)
+    @Description("Decoding the events of one track chunk: its preamble for the file info, or the whole track to index it or to collect its tempo changes")
+    static final class TrackDecode extends Event
+    {
+        private static final TrackDecode PROBE = new TrackDecode();
+        
+        @Label("Path")
+        String path;
+        @Label("Track Number")
+        int trackNumber;
+        @Label("Phase")
+        String phase;
+        
+        static TrackDecode beginIfEnabled()
+        {
+            return beginEvent(PROBE,TrackDecode::new);
+        }
+        
+        void finish(String path,int trackNumber,String phase)
+        {
+            end();
+            if (shouldCommit())
+            {
+                this.path = path;
+                this.trackNumber = trackNumber;
+                this.phase = phase;
+                commit();
+            }
+        }
+    }
+    
+    @Name(MERGE_STALL)
+    @Label("MIDI Merge Stall")
+    @Category(CATEGORY)
+    @Description("The consumer of a prefetching iterator waiting for the background thread to decode the events of a track")
+    @Threshold("100 us")
+    static final class MergeStall extends Event
+    {
+        private static final MergeStall PROBE = new MergeStall();
+        
+        @Label("Track Number")
+        int trackNumber;
+        @Label("Buffer Capacity")
+        int bufferCapacity;
+        
+        static MergeStall beginIfEnabled()
+        {
+            return beginEvent(PROBE,MergeStall::new);
+        }
+        
+        void finish(int trackNumber,int bufferCapacity)
+        {
+            end();
+            if (shouldCommit())
+            {
+                this.trackNumber = trackNumber;
+                this.bufferCapacity = bufferCapacity;
+                commit();
+            }
+        }
+    }
+    
+    // An instant event, since the dispatch started late rather than took long; the lateness setting is its threshold.
+    @Name(LATE_DISPATCH)
+    @Label("MIDI Late Dispatch")
+    @Category(CATEGORY)
+    @Description("A MidiPlayer calling its listener later than the event was due")
+    static final class LateDispatch extends Event
+    {
+        private static final LateDispatch PROBE = new LateDispatch();
+        
+        @Label("Lateness")
+        @Timespan(Timespan.MICROSECONDS)
+        long lateness;
+        @Label("Track Number")
+        int trackNumber;
+        @Label("Tick")
+        long tick;
+        
+        // The fields are set before committing, as the lateness setting decides on them.
+        static void record(long latenessNanos,int trackNumber,long tick)
+        {
+            if (PROBE.isEnabled())
+            {
+                LateDispatch event = new LateDispatch();
+                event.lateness = Math.max(0,latenessNanos/1000);
+                event.trackNumber = trackNumber;
+                event.tick = tick;
+                event.commit();
+            }
+        }
+        
+        @Name("lateness")
+        @Label("Lateness Threshold")
+        @Description("Record only the dispatches that are at least this late")
+        @SettingDefinition
+        protected boolean latenessThreshold(LatenessThreshold threshold)
+        {
+            return lateness>=threshold.getMicros();
+        }
+    }
+    
+    // A timespan setting such as "1 ms" or "500 us". Of several recordings' values, the lowest applies, as for thresholds.
+    public static final class LatenessThreshold extends SettingControl
+    {
+        private static final String DEFAULT_VALUE = "1 ms";
+        
+        private volatile String value = DEFAULT_VALUE;
+        private volatile long micros = parseMicros(DEFAULT_VALUE);
+        
+        public String combine(Set<String> values)
+        {
+            String lowestValue = null;
+            for (String nextValue : values)
+                if ((parseMicros(nextValue)>=0) && ((lowestValue==null) || (parseMicros(nextValue)<parseMicros(lowestValue))))
+                    lowestValue = nextValue;
+            return lowestValue==null ? DEFAULT_VALUE : lowestValue;
+        }
+        
+        public void setValue(String newValue)
+        {
+            long newMicros = parseMicros(newValue);
+            if (newMicros<0)
+                return;
+            value = newValue;
+            micros = newMicros;
+        }
+        
+        public String getValue()
+        {
+            return value;
+        }
+        
+        long getMicros()
+        {
+            return micros;
+        }
+        
+        // Returns -1 if the value is not a number followed by ns, us, ms or s.
+        private static long parseMicros(String value)
+        {
+            String[] parts = value.trim().split("\\s+");
+            if (parts.length!=2)
+                return -1;
+            long amount;
+            try
+            {
+                amount = Long.parseLong(parts[0]);
+            }
+            catch (NumberFormatException e)
+            {
+                return -1;
+            }
+            switch (parts[1])
+            {
+                case "ns" : return amount/1000;
+                case "us" : return amount;
+                case "ms" : return amount*1000;
+                case "s" : return amount*1000000;
+                default : return -1;
+            }
+        }
+    }
+    
+    
+    // Returns a begun event from the factory, or null if no recording enables the probe's event type.
+    private static <T extends Event> T beginEvent(Event probe,Supplier<T> factory)
+    {
+        if (! probe.isEnabled())
+            return null;
+        T event = factory.get();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,349 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+
+// Walks a directory tree and reads the MIDI files in it in parallel. The results are handed to a ResultListener on the
+// thread that called scan(), in completion order. At most maxInFlight files are being read or waiting to be consumed
+// at any time, so a slow listener holds back the directory walk instead of letting results pile up.
+public class MidiCorpusScanner
+{
+    public interface FileHandler<T>
+    {
+        T handle(Path file,MidiReader reader) throws IOException, MidiFileFormatException;
+    }
+    
+    public interface ResultListener<T>
+    {
+        void fileScanned(Result<T> result);
+    }
+    
+    public static class Result<T>
+    {
+        private Path file;
+        private T value;
+        private Throwable error;
+        private long fileSizeBytes,durationNanos;
+        
+        private Result(Path file,T value,Throwable error,long fileSizeBytes,long durationNanos)
+        {
+            this.file = file;
+            this.value = value;
+            this.error = error;
+            this.fileSizeBytes = fileSizeBytes;
+            this.durationNanos = durationNanos;
+        }
+        
+        public Path getFile()
+        {
+            return file;
+        }
+        
+        public T getValue()
+        {
+            return value;
+        }
+        
+        public Throwable getError()
+        {
+            return error;
+        }
+        
+        public boolean isSuccessful()
+        {
+            return error==null;
+        }
+        
+        public long getFileSizeBytes()
+        {
+            return fileSizeBytes;
+        }
+        
+        public long getDurationNanos()
+        {
+            return durationNanos;
+        }
+        
+        public String toString()
+        {
+            return getClass().getName()+"[file="+file+";value="+value+";error="+error+";fileSizeBytes="+fileSizeBytes+";durationNanos="+durationNanos+']';
+        }
+    }
+    
+    public static class Statistics
+    {
+        private long fileCount,failedFileCount,byteCount,parseNanos,elapsedNanos;
+        
+        public long getFileCount()
+        {
+            return fileCount;
+        }
+        
+        public long getFailedFileCount()
+        {
+            return failedFileCount;
+        }
+        
+        public long getByteCount()
+        {
+            return byteCount;
+        }
+        
+        public long getParseNanos()
+        {
+            return parseNanos;
+        }
+        
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+        
+        public double getFilesPerSecond()
+        {
+            return elapsedNanos==0 ? 0 : fileCount * 1e9 / elapsedNanos;
+        }
+        
+        public double getBytesPerSecond()
+        {
+            return elapsedNanos==0 ? 0 : byteCount * 1e9 / elapsedNanos;
+        }
+        
+        private void add(Result<?> result)
+        {
+            fileCount++;
+            if (! result.isSuccessful())
+                failedFileCount++;
+            byteCount+=result.fileSizeBytes;
+            parseNanos+=result.durationNanos;
+        }
+        
+        public String toString()
+        {
+            return getClass().getName()+"[fileCount="+fileCount+";failedFileCount="+failedFileCount+";byteCount="+byteCount+";parseNanos="+parseNanos+";elapsedNanos="+elapsedNanos+";filesPerSecond="+getFilesPerSecond()+";bytesPerSecond="+getBytesPerSecond()+']';
+        }
+    }
+    
+    
+    private ExecutorService executor;
+    private int maxInFlight = 256;
+    private Predicate<Path> fileFilter = MidiCorpusScanner::isMidiFileName;
+    private MidiReaderMetrics metrics = null;
+    
+    // Uses virtual threads where the runtime provides them (Java 21+), and a fork-join pool with one thread per processor otherwise.
+    public MidiCorpusScanner()
+    {
+        this(null);
+    }
+    
+    public MidiCorpusScanner(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+    
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+    
+    public void setMaxInFlight(int newMaxInFlight)
+    {
+        if (newMaxInFlight<=0)
+            throw new IllegalArgumentException("The maximum number of files in flight must be positive: "+newMaxInFlight);
+        maxInFlight = newMaxInFlight;
+    }
+    
+    public void setFileFilter(Predicate<Path> newFileFilter)
+    {
+        fileFilter = newFileFilter;
+    }
+    
+    // The readers of all files count into the given metrics, which may be shared with other scans; null disables counting.
+    public void setMetrics(MidiReaderMetrics newMetrics)
+    {
+        metrics = newMetrics;
+    }
+    
+    public MidiReaderMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    public Statistics scanMidiFileInfos(Path root,ResultListener<MidiFileInfo> listener) throws IOException, InterruptedException
+    {
+        return scan(root,(file,reader) -> reader.getMidiFileInfo(),listener);
+    }
+    
+    // Entries that cannot be read, such as unreadable directories, are reported as failed results and the walk continues; only
+    // a root that cannot be read fails the scan.
+    public <T> Statistics scan(Path root,FileHandler<T> handler,ResultListener<T> listener) throws IOException, InterruptedException
+    {
+        ExecutorService scanExecutor = executor==null ? createDefaultExecutor() : executor;
+        Statistics statistics = new Statistics();
+        long startNanos = System.nanoTime();
+        try
+        {
+            ScanVisitor<T> visitor = new ScanVisitor<T>(root,scanExecutor,handler,listener,statistics);
+            Files.walkFileTree(root,visitor);
+            visitor.finish();
+        }
+        finally
+        {
+            if (executor==null)
+                scanExecutor.shutdownNow();
+        }
+        statistics.elapsedNanos = System.nanoTime() - startNanos;
+        return statistics;
+    }
+    
+    
+    // Submits the files as the walk reaches them, waiting for results whenever maxInFlight files are in flight.
+    private class ScanVisitor<T> extends SimpleFileVisitor<Path>
+    {
+        private Path root;
+        private ExecutorService scanExecutor;
+        private FileHandler<T> handler;
+        private ResultListener<T> listener;
+        private Statistics statistics;
+        private MidiReaderMetrics scanMetrics = metrics;
+        private BlockingQueue<Result<T>> results = new LinkedBlockingQueue<Result<T>>();
+        private int inFlight = 0;
+        private InterruptedException interruption = null;
+        
+        public ScanVisitor(Path root,ExecutorService scanExecutor,FileHandler<T> handler,ResultListener<T> listener,Statistics statistics)
+        {
+            this.root = root;
+            this.scanExecutor = scanExecutor;
+            this.handler = handler;
+            this.listener = listener;
+            this.statistics = statistics;
+        }
+        
+        public FileVisitResult visitFile(Path file,BasicFileAttributes attributes)
+        {
+            // The attributes are those of a symbolic link itself, whose target is looked up only then.
+            boolean regularFile = attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(file));
+            if ((! regularFile) || (! fileFilter.test(file)))
+                return FileVisitResult.CONTINUE;
+            try
+            {
+                for (Result<T> result; (result = inFlight<maxInFlight ? results.poll() : results.take())!=null; inFlight--)
+                    deliver(result,listener,statistics);
+            }
+            catch (InterruptedException e)
+            {
+                interruption = e;
+                return FileVisitResult.TERMINATE;
+            }
+            scanExecutor.execute(() -> {
+                try
+                {
+                    results.add(scanFile(file,handler,scanMetrics));
+                }
+                catch (Error e) // Handed to the scanning thread, which rethrows it instead of waiting for the result forever.
+                {
+                    results.add(new Result<T>(file,null,e,0,0));
+                }
+            });
+            inFlight++;
+            return FileVisitResult.CONTINUE;
+        }
+        
+        public FileVisitResult visitFileFailed(Path file,IOException e) throws IOException
+        {
+            if (file.equals(root))
+                throw e;
+            deliver(new Result<T>(file,null,e,0,0),listener,statistics);
+            return FileVisitResult.CONTINUE;
+        }
+        
+        public FileVisitResult postVisitDirectory(Path directory,IOException e) throws IOException
+        {
+            if (e!=null)
+                visitFileFailed(directory,e);
+            return FileVisitResult.CONTINUE;
+        }
+        
+        private void finish() throws InterruptedException
+        {
+            if (interruption!=null)
+                throw interruption;
+            for (; inFlight>0; inFlight--)
+                deliver(results.take(),listener,statistics);
+        }
+    }
+    
+    
+    private static <T> Result<T> scanFile(Path file,FileHandler<T> handler,MidiReaderMetrics metrics)
+    {
+        long startNanos = System.nanoTime();
+        long fileSizeBytes = 0;
+        try (MidiReader reader = new MidiReader(file.toFile()))
+        {
+            reader.setMetrics(metrics);
+            fileSizeBytes = Files.size(file);
+            T value = handler.handle(file,reader);
+            return new Result<T>(file,value,null,fileSizeBytes,System.nanoTime() - startNanos);
+        }
+        catch (Exception e) // Failures are reported per file and do not stop the scan.
+        {
+            return new Result<T>(file,null,e,fileSizeBytes,System.nanoTime() - startNanos);
+        }
+    }
+    
+    private static <T> void deliver(Result<T> result,ResultListener<T> listener,Statistics statistics)
+    {
+        if (result.error instanceof Error)
+            throw (Error) result.error;
+        statistics.add(result);
+        listener.fileScanned(result);
+    }
+    
+    private static boolean isMidiFileName(Path file)
+    {
+        String fileName = file.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".mid") || fileName.endsWith(".midi") || fileName.endsWith(".kar");
+    }
+    
+    private static ExecutorService createDefaultExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import haus.bernhard.midireader.midievent.MetaMidiEvent;
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Walks the events of all tracks in chronological order like MidiReader's iterator, but decodes every event in place
+// instead of creating a MidiEvent object for it. The accessors describe the current event until advance() is called again.
+public final class MidiEventCursor
+{
+    public enum EventType { NOTE_OFF, NOTE_ON, KEY_AFTER_TOUCH, CONTROL_CHANGE, PROGRAM_CHANGE, CHANNEL_AFTER_TOUCH, PITCH_WHEEL_CHANGE, SYSTEM_EXCLUSIVE, META };
+    
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    
+    private MidiTrackReader[] trackReaders;
+    private TempoMap tempoMap;
+    private boolean addTempoChanges;
+    private MidiEventFilter eventFilter;
+    private MidiReaderMetrics.Recorder recorder;
+    private int[] heap;
+    private int heapSize = 0;
+    private MidiTrackReader current = null;
+    private long previousTick = 0;
+    
+    MidiEventCursor(MidiTrackReader[] trackReaders,TempoMap tempoMap,boolean addTempoChanges,long startTick,MidiEventFilter eventFilter,MidiReaderMetrics.Recorder recorder)
+    {
+        previousTick = startTick;
+        this.trackReaders = trackReaders;
+        this.tempoMap = tempoMap;
+        this.addTempoChanges = addTempoChanges;
+        this.eventFilter = eventFilter;
+        this.recorder = recorder;
+        heap = new int[trackReaders.length];
+        for (int trackNumber=0; trackNumber<trackReaders.length; trackNumber++)
+            if ((! trackReaders[trackNumber].isTrackEndReached()) && ((eventFilter==null) || eventFilter.acceptsTrack(trackNumber)))
+                heap[heapSize++] = trackNumber;
+        for (int i=heapSize/2 - 1; i>=0; i--)
+            siftDown(i);
+    }
+    
+    public boolean advance() throws IOException, MidiFileFormatException
+    {
+        if (recorder==null)
+            return advanceToNextEvent();
+        long startNanos = System.nanoTime(),previousDecodeNanos = recorder.decodeNanos;
+        boolean advanced = advanceToNextEvent();
+        recorder.mergeNanos+=System.nanoTime() - startNanos - (recorder.decodeNanos - previousDecodeNanos);
+        return advanced;
+    }
+    
+    public EventType type()
+    {
+        int status = current().status;
+        if (status<0xF0)
+            return EVENT_TYPES[(status>>4) - 8];
+        return status==MidiTrackReader.STATUS_META ? EventType.META : EventType.SYSTEM_EXCLUSIVE;
+    }
+    
+    public int status()
+    {
+        return current().status;
+    }
+    
+    public int channelNumber()
+    {
+        return current().status & 0x0F;
+    }
+    
+    public int data1()
+    {
+        return current().data1;
+    }
+    
+    public int data2()
+    {
+        return current().data2;
+    }
+    
+    public long tick()
+    {
+        return current().getRunningTotalTime();
+    }
+    
+    public long micros()
+    {
+        return tempoMap.tickToMicros(current().getRunningTotalTime());
+    }
+    
+    public int deltaTime()
+    {
+        return (int) (current().getRunningTotalTime() - previousTick);
+    }
+    
+    public int trackNumber()
+    {
+        return current().getTrackNumber();
+    }
+    
+    public MetaMidiEvent.MetaEventType metaEventType()
+    {
+        return type()==EventType.META ? MidiTrackReader.getMetaEventType(current.data1) : null;
+    }
+    
+    // The length of the payload of a meta or system exclusive event (the data after the length), or 0 for other events.
+    public int payloadLength()
+    {
+        return current().hasPayload() ? current.payloadLength : 0;
+    }
+    
+    public int copyPayload(byte[] destination,int offset)
+    {
+        int payloadLength = payloadLength();
+        if (payloadLength>0)
+            System.arraycopy(current.getPayload(),0,destination,offset,payloadLength);
+        return payloadLength;
+    }
+    
+    // Returns the payload as a read-only buffer that, unlike the cursor, remains valid after advance(); for a file it is a view of the
+    // mapped file rather than a copy. Returns null for events without a payload.
+    public ByteBuffer payload()
+    {
+        return current().hasPayload() ? current.getPayloadView() : null;
+    }
+    
+    public MidiEvent toMidiEvent()
+    {
+        MidiEvent midiEvent = current().createMidiEvent();
+        midiEvent.setDeltaTime(deltaTime());
+        return midiEvent;
+    }
+    
+    private boolean advanceToNextEvent() throws IOException, MidiFileFormatException
+    {
+        if (current!=null)
+            previousTick = current.getRunningTotalTime();
+        while (true)
+        {
+            if (current!=null)
+            {
+                current.updateChannelInfo();
+                if (current.isTrackEnd())
+                    heap[0] = heap[--heapSize];
+                else if (recorder==null)
+                    current.decodeNextEvent();
+                else
+                {
+                    long decodeStartNanos = System.nanoTime();
+                    current.decodeNextEvent();
+                    recorder.decodeNanos+=System.nanoTime() - decodeStartNanos;
+                }
+                siftDown(0);
+            }
+            current = heapSize==0 ? null : trackReaders[heap[0]];
+            if (current==null)
+                return false;
+            if (addTempoChanges && current.isTempoChange())
+                tempoMap.addTempoChange(current.getRunningTotalTime(),current.getTempo());
+            if (eventFilter==null)
+                return true;
+            if (eventFilter.isPastTickRange(current.getRunningTotalTime()))
+            {
+                // The events are merged in tick order, so all remaining events are past the range as well.
+                heapSize = 0;
+                current = null;
+                return false;
+            }
+            if (eventFilter.accepts(current.status,current.data1,current.getRunningTotalTime()))
+                return true;
+        }
+    }
+    
+    private MidiTrackReader current()
+    {
+        if (current==null)
+            throw new IllegalStateException("The cursor is not positioned on an event; advance() must return true first!");
+        return current;
+    }
+    
+    private boolean precedes(int trackNumber,int otherTrackNumber)
+    {
+        long tick = trackReaders[trackNumber].getRunningTotalTime(),otherTick = trackReaders[otherTrackNumber].getRunningTotalTime();
+        return (tick<otherTick) || ((tick==otherTick) && (trackNumber<otherTrackNumber));
+    }
+    
+    private void siftDown(int index)
+    {
+        if (index>=heapSize)
+            return;
+        int trackNumber = heap[index];
+        int childIndex;
+        while ((childIndex = 2*index + 1)<heapSize)
+        {
+            if ((childIndex + 1<heapSize) && precedes(heap[childIndex + 1],heap[childIndex]))
+                childIndex++;
+            if (! precedes(heap[childIndex],trackNumber))
+                break;
+            heap[index] = heap[childIndex];
+            index = childIndex;
+        }
+        heap[index] = trackNumber;
+    }
+}
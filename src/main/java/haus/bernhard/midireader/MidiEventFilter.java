@@ -0,0 +1,172 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Set;
+
+import haus.bernhard.midireader.MidiEventCursor.EventType;
+import haus.bernhard.midireader.midievent.MetaMidiEvent.MetaEventType;
+
+// Selects the events that a MidiReader (or MidiTrackReader) returns. The readers test each event against the filter as soon as
+// it is decoded, before a MidiEvent is created for it, and skip the payloads of meta events of types that are not selected.
+// The events that are filtered out still update the channels and the tempo map. By default, all events are selected.
+public class MidiEventFilter
+{
+    private EnumSet<EventType> eventTypes = EnumSet.allOf(EventType.class);
+    private EnumSet<MetaEventType> metaEventTypes = EnumSet.allOf(MetaEventType.class);
+    private int channelMask = 0xFFFF;
+    private BitSet trackNumbers = null;
+    private long fromTick = 0,toTick = Long.MAX_VALUE;
+    // Lookup tables derived from the settings above: by the upper nibble of the status byte, and by meta event type code.
+    private boolean[] acceptedCommands = new boolean[16];
+    private boolean[] acceptedMetaTypeCodes = new boolean[256];
+    
+    public MidiEventFilter()
+    {
+        updateLookupTables();
+    }
+    
+    public Set<EventType> getEventTypes()
+    {
+        return EnumSet.copyOf(eventTypes);
+    }
+    
+    public void setEventTypes(Set<EventType> newEventTypes)
+    {
+        eventTypes = newEventTypes.isEmpty() ? EnumSet.noneOf(EventType.class) : EnumSet.copyOf(newEventTypes);
+        updateLookupTables();
+    }
+    
+    public Set<MetaEventType> getMetaEventTypes()
+    {
+        return EnumSet.copyOf(metaEventTypes);
+    }
+    
+    // Selects the meta events of the given types, if meta events are selected at all (see setEventTypes()).
+    public void setMetaEventTypes(Set<MetaEventType> newMetaEventTypes)
+    {
+        metaEventTypes = newMetaEventTypes.isEmpty() ? EnumSet.noneOf(MetaEventType.class) : EnumSet.copyOf(newMetaEventTypes);
+        updateLookupTables();
+    }
+    
+    public int getChannelMask()
+    {
+        return channelMask;
+    }
+    
+    // Bit n selects the channel events of channel n. Does not affect system-exclusive and meta events.
+    public void setChannelMask(int newChannelMask)
+    {
+        channelMask = newChannelMask & 0xFFFF;
+    }
+    
+    public void setChannels(int... channelNumbers)
+    {
+        int newChannelMask = 0;
+        for (int channelNumber : channelNumbers)
+        {
+            if ((channelNumber<0) || (channelNumber>15))
+                throw new IllegalArgumentException("Channel number must be between 0 and 15: "+channelNumber);
+            newChannelMask|=1<<channelNumber;
+        }
+        channelMask = newChannelMask;
+    }
+    
+    // Selects the events of the given tracks only; the other tracks are not decoded at all. Without arguments, all tracks are selected.
+    public void setTrackNumbers(int... newTrackNumbers)
+    {
+        if (newTrackNumbers.length==0)
+        {
+            trackNumbers = null;
+            return;
+        }
+        trackNumbers = new BitSet();
+        for (int trackNumber : newTrackNumbers)
+            trackNumbers.set(trackNumber);
+    }
+    
+    public long getFromTick()
+    {
+        return fromTick;
+    }
+    
+    public long getToTick()
+    {
+        return toTick;
+    }
+    
+    // Selects the events with fromTick <= tick < toTick. Tracks are not decoded beyond toTick.
+    public void setTickRange(long newFromTick,long newToTick)
+    {
+        if (newFromTick>newToTick)
+            throw new IllegalArgumentException("The tick range must not end ("+newToTick+") before it starts ("+newFromTick+")");
+        fromTick = newFromTick;
+        toTick = newToTick;
+    }
+    
+    public String toString()
+    {
+        return getClass().getName()+"[eventTypes="+eventTypes+";metaEventTypes="+metaEventTypes+";channelMask="+Integer.toHexString(channelMask)+";trackNumbers="+(trackNumbers==null ? "all" : trackNumbers)+";fromTick="+fromTick+";toTick="+toTick+']';
+    }
+    
+    
+    boolean acceptsTrack(int trackNumber)
+    {
+        return (trackNumbers==null) || trackNumbers.get(trackNumber);
+    }
+    
+    boolean acceptsMetaTypeCode(int metaTypeCode)
+    {
+        return acceptedMetaTypeCodes[metaTypeCode & 0xFF];
+    }
+    
+    boolean acceptsSystemExclusive()
+    {
+        return eventTypes.contains(EventType.SYSTEM_EXCLUSIVE);
+    }
+    
+    boolean accepts(int status,int data1,long tick)
+    {
+        if ((tick<fromTick) || (tick>=toTick) || ! acceptedCommands[status>>4])
+            return false;
+        if (status<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+            return (channelMask & (1<<(status & 0x0F)))!=0;
+        return (status==MidiTrackReader.STATUS_META) ? acceptedMetaTypeCodes[data1 & 0xFF] : eventTypes.contains(EventType.SYSTEM_EXCLUSIVE);
+    }
+    
+    // True once the decoder has passed the tick range, so that the rest of the track can be left undecoded.
+    boolean isPastTickRange(long tick)
+    {
+        return tick>=toTick;
+    }
+    
+    private void updateLookupTables()
+    {
+        EventType[] channelEventTypes = EventType.values();
+        for (int command=8; command<15; command++)
+            acceptedCommands[command] = eventTypes.contains(channelEventTypes[command - 8]);
+        acceptedCommands[15] = eventTypes.contains(EventType.SYSTEM_EXCLUSIVE) || eventTypes.contains(EventType.META);
+        for (int metaTypeCode=0; metaTypeCode<256; metaTypeCode++)
+            acceptedMetaTypeCodes[metaTypeCode] = eventTypes.contains(EventType.META) && metaEventTypes.contains(MidiTrackReader.getMetaEventType(metaTypeCode));
+    }
+}
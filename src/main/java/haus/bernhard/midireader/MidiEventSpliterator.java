@@ -0,0 +1,204 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Spliterator over the merged events of a MidiReader. Unsplit, it simply drains the reader's iterator. Splitting indexes the
+// tracks (see TrackCheckpoints) and divides the song at tick boundaries: each part then decodes its range [fromTick, toTick)
+// with its own track readers, positioned by skipping to fromTick, so that the parts together yield exactly the reader's events.
+final class MidiEventSpliterator implements Spliterator<MidiEvent>
+{
+    // Ranges with fewer events than this (by estimate) are not split further.
+    private static final long MIN_SPLIT_EVENT_COUNT = 4096;
+    
+    private MidiReader reader;
+    private TrackCheckpoints[] trackCheckpoints;
+    private long endTick,totalEventCount;
+    private long fromTick = 0,toTick = Long.MAX_VALUE;
+    private Iterator<MidiEvent> iterator = null;
+    // The track readers and merge recorder of a part with metrics, which are flushed when the part ends.
+    private MidiTrackReader[] trackReaders = null;
+    private MidiReaderMetrics.Recorder recorder = null;
+    
+    public MidiEventSpliterator(MidiReader reader)
+    {
+        this.reader = reader;
+    }
+    
+    private MidiEventSpliterator(MidiEventSpliterator parent,long fromTick,long toTick)
+    {
+        reader = parent.reader;
+        trackCheckpoints = parent.trackCheckpoints;
+        endTick = parent.endTick;
+        totalEventCount = parent.totalEventCount;
+        this.fromTick = fromTick;
+        this.toTick = toTick;
+    }
+    
+    public boolean tryAdvance(Consumer<? super MidiEvent> action)
+    {
+        if (iterator==null)
+            iterator = open();
+        if (! iterator.hasNext())
+        {
+            flushMetrics();
+            return false;
+        }
+        MidiEvent midiEvent = iterator.next();
+        if (midiEvent.getTotalTime()>=toTick)
+        {
+            iterator = Collections.emptyIterator();
+            flushMetrics();
+            return false;
+        }
+        action.accept(midiEvent);
+        return true;
+    }
+    
+    public void forEachRemaining(Consumer<? super MidiEvent> action)
+    {
+        while (tryAdvance(action))
+            ;
+    }
+    
+    public Spliterator<MidiEvent> trySplit()
+    {
+        if (iterator!=null)
+            return null;
+        try
+        {
+            if ((trackCheckpoints==null) && ! index())
+                return null;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        catch (MidiFileFormatException e)
+        {
+            throw new RuntimeException(e);
+        }
+        long upperTick = Math.min(toTick,endTick + 1);
+        if ((estimateSize()<MIN_SPLIT_EVENT_COUNT) || (upperTick - fromTick<2))
+            return null;
+        long middleTick = fromTick + (upperTick - fromTick)/2;
+        MidiEventSpliterator prefix = new MidiEventSpliterator(this,fromTick,middleTick);
+        fromTick = middleTick;
+        return prefix;
+    }
+    
+    public long estimateSize()
+    {
+        if (trackCheckpoints==null)
+            return Long.MAX_VALUE;
+        if ((fromTick==0) && (toTick==Long.MAX_VALUE))
+            return totalEventCount;
+        long upperTick = Math.min(toTick,endTick + 1);
+        return upperTick<=fromTick ? 0 : (long) ((double) totalEventCount*(upperTick - fromTick)/(endTick + 1));
+    }
+    
+    public int characteristics()
+    {
+        // The exact size is known only for the whole song, once it has been indexed.
+        boolean sized = (trackCheckpoints!=null) && (fromTick==0) && (toTick==Long.MAX_VALUE);
+        return ORDERED | NONNULL | (sized ? SIZED : 0);
+    }
+    
+    
+    // Indexes the tracks for splitting. This happens on the first split, before any part is handed to another thread, so that
+    // the parts only read the index and the tempo map. With an event filter, the first delta time of a part would depend on
+    // the last selected event before it, which the index cannot tell, so filtered readers are not split.
+    private boolean index() throws IOException, MidiFileFormatException
+    {
+        if ((reader.getTrackChunks()==null) || (reader.getStartTick()!=0) || (reader.getEventFilter()!=null))
+            return false;
+        trackCheckpoints = reader.getTrackCheckpoints();
+        reader.getTempoMap();
+        for (TrackCheckpoints checkpoints : trackCheckpoints)
+        {
+            endTick = Math.max(endTick,checkpoints.getEndTick());
+            totalEventCount+=checkpoints.getIteratedEventCount();
+        }
+        return true;
+    }
+    
+    private Iterator<MidiEvent> open()
+    {
+        if (trackCheckpoints==null)
+            return reader.iterator();
+        try
+        {
+            MidiFileInfo readerInfo = reader.getMidiFileInfo();
+            // Reading a track's info also records file-level fields, which must not be written to the reader's info from several threads.
+            MidiFileInfo rangeInfo = new MidiFileInfo(readerInfo.getFileName(),readerInfo.getFileFormat(),readerInfo.getNumberOfTracks(),readerInfo.getTicksPerQuarterNote());
+            ByteBuffer[] trackChunks = reader.getTrackChunks();
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Iterator<MidiEvent>[] trackIterators = new Iterator[trackChunks.length];
+            MidiReaderMetrics metrics = reader.getMetrics();
+            if (metrics!=null)
+            {
+                trackReaders = new MidiTrackReader[trackChunks.length];
+                recorder = metrics.newRecorder();
+            }
+            long previousTick = 0;
+            for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+            {
+                MidiTrackReader trackReader = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),trackNumber);
+                if (metrics!=null)
+                {
+                    trackReader.setMetrics(metrics);
+                    trackReaders[trackNumber] = trackReader;
+                }
+                trackReader.readMidiTrackInfo(rangeInfo);
+                if (fromTick>0)
+                    previousTick = Math.max(previousTick,trackReader.skipToTick(trackCheckpoints[trackNumber],fromTick));
+                trackIterators[trackNumber] = trackReader.iterator();
+            }
+            return reader.mergeTracks(trackIterators,previousTick,recorder);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        catch (MidiFileFormatException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private void flushMetrics()
+    {
+        if (recorder==null)
+            return;
+        for (MidiTrackReader trackReader : trackReaders)
+            trackReader.setMetrics(null);
+        recorder.flush();
+        recorder = null;
+    }
+}
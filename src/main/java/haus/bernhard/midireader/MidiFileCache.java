@@ -0,0 +1,388 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+import haus.bernhard.midireader.util.FileHelpers;
+
+// Directory of binary cache entries, one per MIDI file, holding the file info, the tempo map and the merged event sequence.
+// An entry is named after a hash of the MIDI file's absolute path and is valid while the file's path, size, modification
+// time and content checksum are unchanged. When the directory grows beyond its size limit, the least recently used entries are deleted.
+// A hit only maps and validates its entry and marks it as used; the size limit is enforced when an entry is written, so entries
+// written by other processes sharing the directory count against the limit from this cache's next write on.
+public class MidiFileCache
+{
+    public static final int FORMAT_VERSION = 3;
+    
+    private static final int MAGIC = 0x4D524358; // "MRCX"
+    private static final String ENTRY_SUFFIX = ".mrcx";
+    
+    private Path directory;
+    private long maxSizeBytes;
+    
+    public MidiFileCache(Path directory,long maxSizeBytes) throws IOException
+    {
+        this.directory = Files.createDirectories(directory);
+        this.maxSizeBytes = maxSizeBytes;
+    }
+    
+    public Path getDirectory()
+    {
+        return directory;
+    }
+    
+    public long getMaxSizeBytes()
+    {
+        return maxSizeBytes;
+    }
+    
+    public CachedMidiFile open(Path midiFile) throws IOException, MidiFileFormatException
+    {
+        Path sourcePath = midiFile.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(sourcePath,BasicFileAttributes.class);
+        long size = attributes.size(),lastModified = attributes.lastModifiedTime().toMillis();
+        int checksum = getChecksum(sourcePath);
+        Path entry = getEntryPath(sourcePath);
+        
+        CachedMidiFile cachedMidiFile = load(entry,sourcePath.toString(),size,lastModified,checksum);
+        if (cachedMidiFile!=null)
+        {
+            markUsed(entry);
+            return cachedMidiFile;
+        }
+        
+        write(entry,sourcePath,size,lastModified,checksum);
+        cachedMidiFile = load(entry,sourcePath.toString(),size,lastModified,checksum);
+        evict(entry);
+        if (cachedMidiFile==null)
+            throw new IOException("Cache entry "+entry+" could not be read back after writing it");
+        return cachedMidiFile;
+    }
+    
+    public void invalidate(Path midiFile) throws IOException
+    {
+        Files.deleteIfExists(getEntryPath(midiFile.toAbsolutePath().normalize()));
+    }
+    
+    public synchronized void clear() throws IOException
+    {
+        for (Path entry : listEntries())
+            Files.deleteIfExists(entry);
+    }
+    
+    private Path getEntryPath(Path sourcePath) throws IOException
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sourcePath.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i=0; i<16; i++)
+                name.append(String.format("%02x",digest[i]));
+            return directory.resolve(name.append(ENTRY_SUFFIX).toString());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e);
+        }
+    }
+    
+    private static int getChecksum(Path sourcePath) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(sourcePath,StandardOpenOption.READ))
+        {
+            CRC32C crc = new CRC32C();
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()));
+            return (int) crc.getValue();
+        }
+    }
+    
+    private static CachedMidiFile load(Path entry,String sourcePath,long size,long lastModified,int checksum) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(entry,StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        try
+        {
+            if ((buffer.getInt()!=MAGIC) || (buffer.getInt()!=FORMAT_VERSION) || (! sourcePath.equals(readString(buffer))) 
+                    || (buffer.getLong()!=size) || (buffer.getLong()!=lastModified) || (buffer.getInt()!=checksum))
+                return null;
+            
+            MidiFileInfo midiFileInfo = new MidiFileInfo(readString(buffer),MidiFileFormat.values()[buffer.getInt()],buffer.getInt(),buffer.getInt());
+            midiFileInfo.setMainTrackName(readString(buffer));
+            int numerator = buffer.getInt(),denominator = buffer.getInt();
+            if (denominator!=0)
+                midiFileInfo.setTimeSignature(new TimeSignature(numerator,denominator));
+            midiFileInfo.setTicksPerMetronomeClick(buffer.getInt());
+            long microsecondsPerQuarterNote = buffer.getLong();
+            if (microsecondsPerQuarterNote!=0)
+                midiFileInfo.setMicrosecondsPerQuarterNote(microsecondsPerQuarterNote);
+            for (int trackCount=buffer.getInt(); trackCount>0; trackCount--)
+            {
+                MidiTrackInfo trackInfo = new MidiTrackInfo(buffer.getInt());
+                trackInfo.setTrackLengthBytes(buffer.getLong());
+                trackInfo.setTrackName(readString(buffer));
+                for (int channelCount=buffer.getInt(); channelCount>0; channelCount--)
+                {
+                    Channel channel = new Channel(trackInfo.getTrackNumber(),buffer.getInt());
+                    channel.setVolume(buffer.getInt());
+                    trackInfo.addChannel(channel);
+                }
+                midiFileInfo.addTrack(trackInfo);
+            }
+            
+            TempoMap tempoMap = new TempoMap(midiFileInfo.getTicksPerQuarterNote());
+            for (int segmentCount=buffer.getInt(); segmentCount>0; segmentCount--)
+                tempoMap.addTempoChange(buffer.getLong(),buffer.getLong());
+            
+            int eventCount = buffer.getInt(),eventsLength = buffer.getInt();
+            return new CachedMidiFile(midiFileInfo,tempoMap,eventCount,buffer.slice(buffer.position(),eventsLength));
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            return null; // Truncated or corrupt entry; it is rewritten.
+        }
+    }
+    
+    private void write(Path entry,Path sourcePath,long size,long lastModified,int checksum) throws IOException, MidiFileFormatException
+    {
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+        DataOutputStream metadata = new DataOutputStream(metadataBytes);
+        // Each event is stored as its delta-time and track number (variable-length quantities like in a MIDI file), its status byte,
+        // its data bytes (the meta type for meta events) and, for meta and system exclusive events, the payload length and payload.
+        ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+        int eventCount = 0;
+        long previousTick = 0;
+        byte[] payload = new byte[256];
+        
+        try (MidiReader reader = new MidiReader(sourcePath.toString()))
+        {
+            // The file info is written before iterating, because iterating updates the channel volumes.
+            writeMidiFileInfo(metadata,reader.getMidiFileInfo());
+            TempoMap tempoMap = reader.getTempoMap();
+            metadata.writeInt(tempoMap.getSegmentCount());
+            for (int segment=0; segment<tempoMap.getSegmentCount(); segment++)
+            {
+                metadata.writeLong(tempoMap.getSegmentStartTick(segment));
+                metadata.writeLong(tempoMap.getSegmentMicrosecondsPerQuarterNote(segment));
+            }
+            
+            MidiEventCursor cursor = reader.cursor();
+            while (cursor.advance())
+            {
+                writeVariableLengthQuantity(eventBytes,cursor.tick() - previousTick);
+                previousTick = cursor.tick();
+                writeVariableLengthQuantity(eventBytes,cursor.trackNumber());
+                int status = cursor.status();
+                eventBytes.write(status);
+                if (status<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+                {
+                    eventBytes.write(cursor.data1());
+                    if (MidiTrackReader.hasTwoDataBytes(status))
+                        eventBytes.write(cursor.data2());
+                }
+                else
+                {
+                    if (status==MidiTrackReader.STATUS_META)
+                        eventBytes.write(cursor.data1());
+                    int payloadLength = cursor.payloadLength();
+                    writeVariableLengthQuantity(eventBytes,payloadLength);
+                    if (payloadLength>payload.length)
+                        payload = new byte[Math.max(payload.length*2,payloadLength)];
+                    cursor.copyPayload(payload,0);
+                    eventBytes.write(payload,0,payloadLength);
+                }
+                eventCount++;
+            }
+        }
+        
+        Path temporaryFile = Files.createTempFile(directory,"entry",".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out,sourcePath.toString());
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeInt(checksum);
+                metadataBytes.writeTo(out);
+                out.writeInt(eventCount);
+                out.writeInt(eventBytes.size());
+                eventBytes.writeTo(out);
+            }
+            Files.move(temporaryFile,entry,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+    
+    private static void writeMidiFileInfo(DataOutputStream out,MidiFileInfo midiFileInfo) throws IOException
+    {
+        writeString(out,midiFileInfo.getFileName());
+        out.writeInt(midiFileInfo.getFileFormat().ordinal());
+        out.writeInt(midiFileInfo.getNumberOfTracks());
+        out.writeInt(midiFileInfo.getTicksPerQuarterNote());
+        writeString(out,midiFileInfo.getMainTrackName());
+        TimeSignature timeSignature = midiFileInfo.getTimeSignature();
+        out.writeInt(timeSignature==null ? 0 : timeSignature.getNumerator());
+        out.writeInt(timeSignature==null ? 0 : timeSignature.getDenominator());
+        out.writeInt(midiFileInfo.getTicksPerMetronomeClick());
+        out.writeLong(midiFileInfo.getMicrosecondsPerQuarterNote());
+        out.writeInt(midiFileInfo.getTrackInfos().size());
+        for (MidiTrackInfo trackInfo : midiFileInfo.getTrackInfos())
+        {
+            out.writeInt(trackInfo.getTrackNumber());
+            out.writeLong(trackInfo.getTrackLengthBytes());
+            writeString(out,trackInfo.getTrackName());
+            out.writeInt(trackInfo.getChannels().size());
+            for (Channel channel : trackInfo.getChannels())
+            {
+                out.writeInt(channel.getChannelNumber());
+                out.writeInt(channel.getVolume());
+            }
+        }
+    }
+    
+    private static void writeString(DataOutputStream out,String s) throws IOException
+    {
+        if (s==null)
+            out.writeInt(-1);
+        else
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+    
+    // Unlike in a MIDI file, the value may take more than 4 bytes.
+    private static void writeVariableLengthQuantity(ByteArrayOutputStream out,long value)
+    {
+        int shift = 0;
+        while ((shift<63) && ((value>>>(shift + 7))!=0))
+            shift+=7;
+        for (; shift>0; shift-=7)
+            out.write((int) (FileHelpers.MSB_MASK | ((value>>>shift) & 0x7F)));
+        out.write((int) (value & 0x7F));
+    }
+    
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length<0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+    
+    // Eviction orders the entries by modification time. If the time cannot be set (such as in a read-only cache directory shared
+    // with other users), the entry keeps its existing time and is evicted as if it had last been used then; it stays valid either way.
+    private static void markUsed(Path entry)
+    {
+        try
+        {
+            Files.setLastModifiedTime(entry,FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException e) // The existing modification time remains in effect.
+        {
+        }
+    }
+    
+    private synchronized void evict(Path keptEntry) throws IOException
+    {
+        ArrayList<Path> entries = listEntries();
+        long[][] entryInfos = new long[entries.size()][];
+        long totalSize = 0;
+        for (int i=0; i<entries.size(); i++)
+        {
+            try
+            {
+                BasicFileAttributes attributes = Files.readAttributes(entries.get(i),BasicFileAttributes.class);
+                entryInfos[i] = new long[] { attributes.lastModifiedTime().toMillis(), attributes.size(), i };
+            }
+            catch (NoSuchFileException e)
+            {
+                entryInfos[i] = new long[] { Long.MAX_VALUE, 0, i };
+            }
+            totalSize+=entryInfos[i][1];
+        }
+        Arrays.sort(entryInfos,(a,b) -> Long.compare(a[0],b[0]));
+        for (long[] entryInfo : entryInfos)
+        {
+            if (totalSize<=maxSizeBytes)
+                break;
+            Path entry = entries.get((int) entryInfo[2]);
+            if (entry.equals(keptEntry))
+                continue;
+            try
+            {
+                Files.deleteIfExists(entry);
+                totalSize-=entryInfo[1];
+            }
+            catch (IOException e) // Still mapped by another process on some platforms; it is retried on the next eviction.
+            {
+            }
+        }
+    }
+    
+    private ArrayList<Path> listEntries() throws IOException
+    {
+        ArrayList<Path> entries = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,"*"+ENTRY_SUFFIX))
+        {
+            for (Path entry : stream)
+                entries.add(entry);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,272 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+
+// Metadata-only view of a MIDI file. Opening it reads just the MThd header and the MTrk chunk lengths; the events of a
+// track are decoded (without creating MidiEvent objects) only when a field is requested that needs them, and only until
+// the field is found or the track's first note is reached. The track name, time signature and tempo are the first ones
+// found, where MidiFileInfo reports the last ones before the first note. A file that cannot be mapped (such as a pipe) is
+// read whole when it is opened, as MidiReader reads it.
+public class MidiFileMetadata
+{
+    private static final int FIELD_TRACK_NAME = 1, FIELD_TIME_SIGNATURE = 2, FIELD_TEMPO = 4, FIELD_PREAMBLE = 8;
+    
+    private String fileName;
+    private MidiFileFormat fileFormat;
+    private int ticksPerQuarterNote;
+    private ByteBuffer[] trackChunks;
+    private TrackScan[] trackScans;
+    
+    public MidiFileMetadata(String filePath) throws IOException, MidiFileFormatException
+    {
+        this(new File(filePath));
+    }
+    
+    public MidiFileMetadata(File file) throws IOException, MidiFileFormatException
+    {
+        fileName = file.getPath();
+        try (FileInputStream stream = new FileInputStream(file))
+        {
+            ByteBuffer mappedFile = MidiReader.mapFile(stream.getChannel());
+            ByteSource source = mappedFile==null ? new StreamByteSource(stream) : new ByteBufferSource(mappedFile.duplicate());
+            MidiFileInfo headerInfo = MidiReader.readHeader(source,fileName);
+            fileFormat = headerInfo.getFileFormat();
+            int trackCount = headerInfo.getNumberOfTracks();
+            ticksPerQuarterNote = headerInfo.getTicksPerQuarterNote();
+            trackChunks = new ByteBuffer[trackCount];
+            trackScans = new TrackScan[trackCount];
+            if (mappedFile==null)
+                readTrackChunks(source);
+            else
+                sliceTrackChunks(mappedFile,((ByteBufferSource) source).getBuffer().position());
+        }
+    }
+    
+    public String getFileName()
+    {
+        return fileName;
+    }
+    
+    public MidiFileFormat getFileFormat()
+    {
+        return fileFormat;
+    }
+    
+    public int getNumberOfTracks()
+    {
+        return trackChunks.length;
+    }
+    
+    public int getTicksPerQuarterNote()
+    {
+        return ticksPerQuarterNote;
+    }
+    
+    public long getTrackLengthBytes(int trackNumber)
+    {
+        return trackChunks[trackNumber].limit() - 8;
+    }
+    
+    public String getMainTrackName() throws IOException, MidiFileFormatException
+    {
+        return trackChunks.length==0 ? null : getTrackName(0);
+    }
+    
+    public String getTrackName(int trackNumber) throws IOException, MidiFileFormatException
+    {
+        return scanTrack(trackNumber,FIELD_TRACK_NAME).trackName;
+    }
+    
+    public TimeSignature getTimeSignature() throws IOException, MidiFileFormatException
+    {
+        TrackScan trackScan = findField(FIELD_TIME_SIGNATURE);
+        return trackScan==null ? null : trackScan.timeSignature;
+    }
+    
+    public int getTicksPerMetronomeClick() throws IOException, MidiFileFormatException
+    {
+        TrackScan trackScan = findField(FIELD_TIME_SIGNATURE);
+        return trackScan==null ? 0 : trackScan.ticksPerMetronomeClick;
+    }
+    
+    public long getMicrosecondsPerQuarterNote() throws IOException, MidiFileFormatException
+    {
+        TrackScan trackScan = findField(FIELD_TEMPO);
+        return trackScan==null ? 0 : trackScan.microsecondsPerQuarterNote;
+    }
+    
+    // With scanWholeTrack, the channels are those of all channel events in the track rather than those of the state changes before the first note.
+    public MidiTrackInfo getTrackInfo(int trackNumber,boolean scanWholeTrack) throws IOException, MidiFileFormatException
+    {
+        MidiTrackInfo preambleTrackInfo = scanTrack(trackNumber,FIELD_PREAMBLE).trackInfo;
+        if (! scanWholeTrack)
+            return preambleTrackInfo;
+        
+        MidiTrackInfo trackInfo = new MidiTrackInfo(trackNumber);
+        trackInfo.setTrackLengthBytes(preambleTrackInfo.getTrackLengthBytes());
+        trackInfo.setTrackName(preambleTrackInfo.getTrackName());
+        MidiTrackReader scanner = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),trackNumber);
+        scanner.readTrackHeader();
+        int channelMask = 0;
+        do
+        {
+            scanner.decodeNextEvent();
+            if (scanner.status<0xF0)
+                channelMask|=1<<(scanner.status & 0x0F);
+        }
+        while (! scanner.isTrackEnd());
+        for (int channelNumber=0; channelNumber<16; channelNumber++)
+            if ((channelMask & (1<<channelNumber))!=0)
+            {
+                Channel channel = preambleTrackInfo.getChannel(channelNumber);
+                trackInfo.addChannel(channel==null ? new Channel(trackNumber,channelNumber) : channel);
+            }
+        return trackInfo;
+    }
+    
+    public MidiFileInfo toMidiFileInfo(boolean scanWholeTracks) throws IOException, MidiFileFormatException
+    {
+        MidiFileInfo midiFileInfo = new MidiFileInfo(fileName,fileFormat,trackChunks.length,ticksPerQuarterNote);
+        midiFileInfo.setMainTrackName(getMainTrackName());
+        midiFileInfo.setTimeSignature(getTimeSignature());
+        midiFileInfo.setTicksPerMetronomeClick(getTicksPerMetronomeClick());
+        if (getMicrosecondsPerQuarterNote()!=0)
+            midiFileInfo.setMicrosecondsPerQuarterNote(getMicrosecondsPerQuarterNote());
+        for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+            midiFileInfo.addTrack(getTrackInfo(trackNumber,scanWholeTracks));
+        return midiFileInfo;
+    }
+    
+    public String toString()
+    {
+        return getClass().getName()+"[fileName="+fileName+";fileFormat="+fileFormat+";numberOfTracks="+trackChunks.length+";ticksPerQuarterNote="+ticksPerQuarterNote+']';
+    }
+    
+    
+    private static class TrackScan
+    {
+        private MidiTrackReader scanner;
+        private MidiTrackInfo trackInfo;
+        private int foundFields = 0;
+        private boolean preambleScanned = false;
+        private String trackName;
+        private TimeSignature timeSignature;
+        private int ticksPerMetronomeClick;
+        private long microsecondsPerQuarterNote;
+    }
+    
+    
+    private void sliceTrackChunks(ByteBuffer mappedFile,int chunkStart) throws MidiFileFormatException
+    {
+        for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+        {
+            if (mappedFile.limit() - chunkStart<8)
+                throw new MidiFileFormatException("Unexpected end of file");
+            long chunkLength = (mappedFile.getInt(chunkStart + 4) & 0xFFFFFFFFL) + 8;
+            if (chunkLength>mappedFile.limit() - chunkStart)
+                throw new MidiFileFormatException("Unexpected end of file");
+            trackChunks[trackNumber] = mappedFile.slice(chunkStart,(int) chunkLength);
+            chunkStart+=(int) chunkLength;
+        }
+    }
+    
+    // Files that cannot be mapped (pipes, devices, files of 2 GB or more) are read like MidiReader reads streams: into heap buffers,
+    // and into a temporary file beyond MidiReader.DEFAULT_MAX_HEAP_BUFFER_BYTES. The buffers come from an unshared pool that keeps
+    // nothing, and the mappings of the temporary file remain valid after the store has closed it (which deletes the file).
+    private void readTrackChunks(ByteSource source) throws IOException, MidiFileFormatException
+    {
+        try (TrackChunkStore chunkStore = new TrackChunkStore(new TrackBufferPool(0),MidiReader.DEFAULT_MAX_HEAP_BUFFER_BYTES))
+        {
+            for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+                trackChunks[trackNumber] = chunkStore.readChunk(source);
+        }
+    }
+    
+    private TrackScan findField(int field) throws IOException, MidiFileFormatException
+    {
+        for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+        {
+            TrackScan trackScan = scanTrack(trackNumber,field);
+            if ((trackScan.foundFields & field)!=0)
+                return trackScan;
+        }
+        return null;
+    }
+    
+    // Continues decoding the track's events before its first note until the given field has been found.
+    private TrackScan scanTrack(int trackNumber,int field) throws IOException, MidiFileFormatException
+    {
+        TrackScan trackScan = trackScans[trackNumber];
+        if (trackScan==null)
+        {
+            trackScans[trackNumber] = trackScan = new TrackScan();
+            trackScan.scanner = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),trackNumber);
+            trackScan.trackInfo = trackScan.scanner.beginTrack();
+        }
+        MidiTrackReader scanner = trackScan.scanner;
+        while ((! trackScan.preambleScanned) && ((trackScan.foundFields & field)==0))
+        {
+            scanner.decodeNextEvent();
+            if (scanner.isNoteEvent() || scanner.isTrackEnd())
+                trackScan.preambleScanned = true;
+            else if (scanner.isMetaEvent())
+            {
+                int newField = 0;
+                switch (scanner.data1)
+                {
+                    case MidiTrackReader.META_TYPE_TRACK_NAME : {
+                        if ((trackScan.foundFields & FIELD_TRACK_NAME)==0)
+                            trackScan.trackInfo.setTrackName(trackScan.trackName = scanner.getPayloadAsString());
+                        newField = FIELD_TRACK_NAME;
+                        break;
+                    }
+                    case MidiTrackReader.META_TYPE_TIME_SIGNATURE : {
+                        if ((trackScan.foundFields & FIELD_TIME_SIGNATURE)==0)
+                        {
+                            trackScan.timeSignature = scanner.getTimeSignature();
+                            trackScan.ticksPerMetronomeClick = scanner.getPayload()[2];
+                        }
+                        newField = FIELD_TIME_SIGNATURE;
+                        break;
+                    }
+                    case MidiTrackReader.META_TYPE_SET_TEMPO : {
+                        if ((trackScan.foundFields & FIELD_TEMPO)==0)
+                            trackScan.microsecondsPerQuarterNote = scanner.getTempo();
+                        newField = FIELD_TEMPO;
+                        break;
+                    }
+                    default : break;
+                }
+                trackScan.foundFields|=newField;
+            }
+            else
+                scanner.updateChannelInfo();
+        }
+        return trackScan;
+    }
+}
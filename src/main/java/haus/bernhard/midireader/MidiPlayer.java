@@ -0,0 +1,287 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Plays the events of a MidiReader in real time. Event times come from the reader's tempo map (MidiEventCursor.micros()) and are
+// scheduled against System.nanoTime() from a fixed anchor, so waiting errors do not add up over the song. Each wait parks the
+// thread until shortly before the event is due and spins for the remainder; events at the same time are dispatched one after
+// the other without waiting again.
+public class MidiPlayer
+{
+    public static final long DEFAULT_SPIN_NANOS = 500000;
+    
+    private MidiReader reader;
+    private Listener listener;
+    private long spinNanos = DEFAULT_SPIN_NANOS;
+    private volatile Timeline timeline = new Timeline(0,0,1.0,false);
+    private volatile boolean stopped = false;
+    private Thread playerThread = null;
+    private TimingStatistics statistics = new TimingStatistics();
+    
+    public interface Listener
+    {
+        // Called on the playing thread when the cursor's event is due. The cursor is valid only during the call.
+        void onEvent(MidiEventCursor cursor);
+    }
+    
+    public MidiPlayer(MidiReader reader,Listener listener)
+    {
+        this.reader = reader;
+        this.listener = listener;
+    }
+    
+    // Waits shorter than this are spun rather than parked. Larger values trade CPU time for timing precision.
+    public void setSpinNanos(long newSpinNanos)
+    {
+        if (newSpinNanos<0)
+            throw new IllegalArgumentException("The spin time must not be negative: "+newSpinNanos);
+        spinNanos = newSpinNanos;
+    }
+    
+    // Plays from the reader's current position until the end of the song or until stop() is called, dispatching the events on
+    // the calling thread. A pause() before play() starts the playback paused, and a stop() before play() makes it return without
+    // playing. The stop applies to one playback: play() may be called again afterwards.
+    public void play() throws IOException, MidiFileFormatException
+    {
+        MidiEventCursor cursor;
+        synchronized (this)
+        {
+            if (playerThread!=null)
+                throw new IllegalStateException("The player is already playing!");
+            cursor = reader.cursor();
+            long startTick = reader.getStartTick();
+            long startMicros = startTick==0 ? 0 : reader.getTempoMap().tickToMicros(startTick);
+            timeline = new Timeline(System.nanoTime(),startMicros,timeline.speed,timeline.paused);
+            playerThread = Thread.currentThread();
+        }
+        try
+        {
+            long batchMicros = -1;
+            while ((! stopped) && cursor.advance())
+            {
+                long eventMicros = cursor.micros();
+                if ((eventMicros!=batchMicros) && (! waitUntil(eventMicros)))
+                    break;
+                batchMicros = eventMicros;
+                Timeline currentTimeline = timeline;
+                long latenessNanos = System.nanoTime() - currentTimeline.toNanos(eventMicros);
+                statistics.record(latenessNanos);
+                JfrEvents.LateDispatch.record(latenessNanos,cursor.trackNumber(),cursor.tick());
+                listener.onEvent(cursor);
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                playerThread = null;
+                stopped = false;
+            }
+        }
+    }
+    
+    public synchronized void pause()
+    {
+        Timeline currentTimeline = timeline;
+        if (! currentTimeline.paused)
+        {
+            long now = System.nanoTime();
+            timeline = new Timeline(now,currentTimeline.toMicros(now),currentTimeline.speed,true);
+        }
+    }
+    
+    public synchronized void resume()
+    {
+        Timeline currentTimeline = timeline;
+        if (currentTimeline.paused)
+        {
+            timeline = new Timeline(System.nanoTime(),currentTimeline.anchorMicros,currentTimeline.speed,false);
+            wakePlayer();
+        }
+    }
+    
+    public synchronized void stop()
+    {
+        stopped = true;
+        wakePlayer();
+    }
+    
+    public boolean isPaused()
+    {
+        return timeline.paused;
+    }
+    
+    // Playback speed relative to the file's tempo; 2.0 plays twice as fast. Takes effect from the current position.
+    public synchronized void setSpeed(double newSpeed)
+    {
+        if (! (newSpeed>0) || Double.isInfinite(newSpeed))
+            throw new IllegalArgumentException("The speed must be positive: "+newSpeed);
+        Timeline currentTimeline = timeline;
+        long now = System.nanoTime();
+        timeline = new Timeline(now,currentTimeline.toMicros(now),newSpeed,currentTimeline.paused);
+        wakePlayer();
+    }
+    
+    public double getSpeed()
+    {
+        return timeline.speed;
+    }
+    
+    // The song position in microseconds, at the file's tempo.
+    public long getPositionMicros()
+    {
+        return timeline.toMicros(System.nanoTime());
+    }
+    
+    public TimingStatistics getStatistics()
+    {
+        return statistics;
+    }
+    
+    
+    // How late events were dispatched, measured from the time each event was due to the call of the listener.
+    public static class TimingStatistics
+    {
+        private static final int BUCKET_COUNT = 64;
+        
+        private long eventCount = 0,totalLatenessNanos = 0,maxLatenessNanos = 0;
+        private double totalSquaredLatenessNanos = 0;
+        // Bucket i counts latenesses below 2^i nanoseconds (and at least 2^(i-1)).
+        private long[] buckets = new long[BUCKET_COUNT];
+        
+        public synchronized long getEventCount()
+        {
+            return eventCount;
+        }
+        
+        public synchronized long getMaxLatenessNanos()
+        {
+            return maxLatenessNanos;
+        }
+        
+        public synchronized double getMeanLatenessNanos()
+        {
+            return eventCount==0 ? 0 : (double) totalLatenessNanos/eventCount;
+        }
+        
+        // The standard deviation of the lateness.
+        public synchronized double getJitterNanos()
+        {
+            if (eventCount==0)
+                return 0;
+            double mean = (double) totalLatenessNanos/eventCount;
+            return Math.sqrt(Math.max(0,totalSquaredLatenessNanos/eventCount - mean*mean));
+        }
+        
+        // An upper bound (within a factor of two) of the lateness that the given fraction of the events did not exceed.
+        public synchronized long getLatenessPercentileNanos(double percentile)
+        {
+            long threshold = (long) Math.ceil(eventCount*percentile/100);
+            long count = 0;
+            for (int i=0; i<BUCKET_COUNT; i++)
+                if ((count+=buckets[i])>=threshold)
+                    return i==0 ? 0 : Math.min(1L << i,maxLatenessNanos);
+            return maxLatenessNanos;
+        }
+        
+        public synchronized void reset()
+        {
+            eventCount = totalLatenessNanos = maxLatenessNanos = 0;
+            totalSquaredLatenessNanos = 0;
+            Arrays.fill(buckets,0);
+        }
+        
+        public synchronized String toString()
+        {
+            return getClass().getName()+"[eventCount="+eventCount+";meanLatenessNanos="+(long) getMeanLatenessNanos()+";jitterNanos="+(long) getJitterNanos()+";p99LatenessNanos="+getLatenessPercentileNanos(99)+";maxLatenessNanos="+maxLatenessNanos+']';
+        }
+        
+        private synchronized void record(long latenessNanos)
+        {
+            latenessNanos = Math.max(0,latenessNanos);
+            eventCount++;
+            totalLatenessNanos+=latenessNanos;
+            totalSquaredLatenessNanos+=(double) latenessNanos*latenessNanos;
+            maxLatenessNanos = Math.max(maxLatenessNanos,latenessNanos);
+            buckets[Math.min(BUCKET_COUNT - 1,64 - Long.numberOfLeadingZeros(latenessNanos))]++;
+        }
+    }
+    
+    // Maps song time to System.nanoTime(): the song was at anchorMicros at anchorNanos and advances at the given speed unless paused.
+    private static class Timeline
+    {
+        private final long anchorNanos,anchorMicros;
+        private final double speed;
+        private final boolean paused;
+        
+        public Timeline(long anchorNanos,long anchorMicros,double speed,boolean paused)
+        {
+            this.anchorNanos = anchorNanos;
+            this.anchorMicros = anchorMicros;
+            this.speed = speed;
+            this.paused = paused;
+        }
+        
+        public long toNanos(long micros)
+        {
+            return anchorNanos + (long) ((micros - anchorMicros)*1000/speed);
+        }
+        
+        public long toMicros(long nanos)
+        {
+            return paused ? anchorMicros : anchorMicros + (long) ((nanos - anchorNanos)*speed/1000);
+        }
+    }
+    
+    
+    // Returns false if playback was stopped (or the thread interrupted) before the song time was reached.
+    private boolean waitUntil(long micros)
+    {
+        while (true)
+        {
+            if (stopped || Thread.currentThread().isInterrupted())
+                return false;
+            Timeline currentTimeline = timeline;
+            if (currentTimeline.paused)
+            {
+                LockSupport.park(this);
+                continue;
+            }
+            long remainingNanos = currentTimeline.toNanos(micros) - System.nanoTime();
+            if (remainingNanos<=0)
+                return true;
+            if (remainingNanos>spinNanos)
+                LockSupport.parkNanos(this,remainingNanos - spinNanos);
+            else
+                Thread.onSpinWait();
+        }
+    }
+    
+    private void wakePlayer()
+    {
+        if (playerThread!=null)
+            LockSupport.unpark(playerThread);
+    }
+}
@@ -26,27 +26,57 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+import haus.bernhard.midireader.midievent.MetaMidiEvent;
 import haus.bernhard.midireader.midievent.MidiEvent;
-import haus.bernhard.midireader.util.*;
+import haus.bernhard.midireader.util.FileHelpers;
 
 public class MidiReader implements Iterable<MidiEvent>,Closeable
 {
+    public static final long DEFAULT_MAX_HEAP_BUFFER_BYTES = 32L << 20;
+    
     private static final byte[] EXPECTED_MIDI_HEADER = new byte[] { 0x4D, 0x54, 0x68, 0x64, 0x00, 0x00, 0x00, 0x06 };
     
     private InputStream stream;
+    private ByteSource source = null;
+    private ByteBuffer mappedFile = null;
     private String filePath = null;
+    private int bufferSize = StreamByteSource.DEFAULT_BUFFER_SIZE;
+    private long maxHeapBufferBytes = DEFAULT_MAX_HEAP_BUFFER_BYTES;
+    private TrackChunkStore chunkStore = null;
     private MidiFileInfo midiFileInfo = null;
     private MidiTrackReader[] trackReaders = null;
+    private ByteBuffer[] trackChunks = null;
+    private TempoMap tempoMap = null;
+    private boolean tempoMapComplete = false;
+    private TrackCheckpoints[] trackCheckpoints = null;
+    private long startTick = 0;
+    private MidiEventFilter eventFilter = null;
+    private MidiReaderMetrics.Recorder recorder = null;
+    private ArrayList<PrefetchingMidiEventIterator> prefetchingIterators = null;
     
     public MidiReader(InputStream stream)
     {
         this.stream = stream;
     }
     
+    public MidiReader(InputStream stream,int bufferSize)
+    {
+        this(stream);
+        this.bufferSize = bufferSize;
+    }
+    
     public MidiReader(InputStream stream,String filePath)
     {
         this(stream);
@@ -63,6 +93,70 @@ public class MidiReader implements Iterable<MidiEvent>,Closeable
         this(new FileInputStream(filePath),filePath);
     }
     
+    // Reads a file image that is already in memory, such as one read by loadAsync(); it is decoded like a mapped file.
+    MidiReader(ByteBuffer fileImage,String filePath)
+    {
+        this((InputStream) null,filePath);
+        mappedFile = fileImage;
+    }
+    
+    // Reads the file info without blocking the calling thread on the disk: the header, the chunk headers and the events of each
+    // track before its first note are read with positional reads on an AsynchronousFileChannel, and decoded on the executor. The
+    // channel runs its reads on the executor if it is an ExecutorService, and on the JVM's default pool for asynchronous channels
+    // otherwise. Cancelling the future closes the channel. The future fails with the IOException or MidiFileFormatException itself.
+    public static CompletableFuture<MidiFileInfo> openAsync(Path file,Executor executor)
+    {
+        return AsyncMidiFileReader.readMidiFileInfo(file,executor);
+    }
+    
+    // Like openAsync(), but reads the whole file and loads its events with PackedMidiSequence.load().
+    public static CompletableFuture<PackedMidiSequence> loadAsync(Path file,Executor executor)
+    {
+        return AsyncMidiFileReader.loadSequence(file,executor);
+    }
+    
+    // Multi-track files read from a stream other than a FileInputStream have their track chunks buffered in memory up to this
+    // many bytes in total, and in a temporary file beyond that. Must be set before the file info is read.
+    public void setMaxHeapBufferBytes(long newMaxHeapBufferBytes)
+    {
+        if (newMaxHeapBufferBytes<0)
+            throw new IllegalArgumentException("The maximum number of buffered bytes must not be negative: "+newMaxHeapBufferBytes);
+        maxHeapBufferBytes = newMaxHeapBufferBytes;
+    }
+    
+    // Restricts the events returned by the iterators, streams and cursors created afterwards; null selects all events.
+    public void setEventFilter(MidiEventFilter newEventFilter)
+    {
+        if ((newEventFilter!=null) && (trackChunks==null) && (prefetchingIterators!=null))
+            throw new IllegalStateException("An event filter is not supported for prefetching a single-track file read from a stream!");
+        eventFilter = newEventFilter;
+        if (trackReaders!=null)
+            for (MidiTrackReader trackReader : trackReaders)
+                trackReader.setEventFilter(eventFilter);
+    }
+    
+    public MidiEventFilter getEventFilter()
+    {
+        return eventFilter;
+    }
+    
+    // Counts the bytes and events read from now on into the given metrics, which are updated when the reader is closed; null disables counting.
+    public void setMetrics(MidiReaderMetrics newMetrics)
+    {
+        if (recorder!=null)
+            recorder.flush();
+        recorder = newMetrics==null ? null : newMetrics.newRecorder();
+        if (trackReaders!=null)
+            for (MidiTrackReader trackReader : trackReaders)
+                if (trackReader!=null)
+                    trackReader.setMetrics(newMetrics);
+    }
+    
+    public MidiReaderMetrics getMetrics()
+    {
+        return recorder==null ? null : recorder.getMetrics();
+    }
+    
     public MidiFileInfo getMidiFileInfo() throws IOException, MidiFileFormatException
     {
         if (midiFileInfo==null)
@@ -70,6 +164,52 @@ public class MidiReader implements Iterable<MidiEvent>,Closeable
         return midiFileInfo;
     }
     
+    public TempoMap getTempoMap() throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        if (! tempoMapComplete)
+        {
+            if (trackChunks==null)
+                throw new IllegalStateException("A complete tempo map is not available for a single-track file read from a stream!");
+            tempoMap = readTempoMap();
+            tempoMapComplete = true;
+        }
+        return tempoMap;
+    }
+    
+    // Positions all tracks so that the next iterator() or cursor() starts with the first events at or after the given tick.
+    // Each track first yields state-change events (at the given tick) that restore the controllers, program and pitch wheel of its channels.
+    public void seekToTick(long tick) throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        if (trackChunks==null)
+            throw new IllegalStateException("Seeking is not supported for a single-track file read from a stream!");
+        getTrackCheckpoints();
+        tick = Math.max(0,tick);
+        for (int trackNumber=0; trackNumber<trackReaders.length; trackNumber++)
+            trackReaders[trackNumber].seekToTick(trackCheckpoints[trackNumber],tick);
+        startTick = tick;
+    }
+    
+    // Returns the channel state of a track at the given tick, i.e. after all of the track's events before it (the state that seeking
+    // to the tick restores). Only the events since the nearest checkpoint are replayed, and the snapshot is independent of the reader.
+    public ChannelState getChannelState(int trackNumber,long tick) throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        if (trackChunks==null)
+            throw new IllegalStateException("Channel states are not available for a single-track file read from a stream!");
+        return MidiTrackReader.readChannelState(trackChunks[trackNumber],getTrackCheckpoints()[trackNumber],Math.max(0,tick));
+    }
+    
+    public void seekToMicros(long microseconds) throws IOException, MidiFileFormatException
+    {
+        TempoMap completeTempoMap = getTempoMap();
+        long tick = completeTempoMap.microsToTick(microseconds);
+        if (completeTempoMap.tickToMicros(tick)<microseconds)
+            tick++;
+        seekToTick(tick);
+    }
+    
     public Iterator<MidiEvent> iterator()
     {
         try
@@ -86,31 +226,90 @@ public class MidiReader implements Iterable<MidiEvent>,Closeable
         }
     }
     
+    // Returns the events of iterator() as a stream. A parallel stream splits the song into time ranges that are decoded independently,
+    // unless the reader is a single-track stream, has been seeked or has an event filter.
+    public Stream<MidiEvent> events() throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        return StreamSupport.stream(new MidiEventSpliterator(this),false);
+    }
+    
+    public MidiEventCursor cursor() throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        return new MidiEventCursor(trackReaders,getStampingTempoMap(),! tempoMapComplete,startTick,eventFilter,recorder);
+    }
+    
+    // Returns an iterator over the same events as iterator(), whose tracks are decoded ahead on a background thread into
+    // buffers of the given number of events per track, so that the consumer only merges. A single-track file read from a stream
+    // cannot be prefetched with an event filter, since the background thread would add the tempo changes that the filter skips
+    // to the tempo map that the consumer stamps the events with.
+    public PrefetchingMidiEventIterator prefetchingIterator(int bufferCapacity) throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        if ((trackChunks==null) && (eventFilter!=null))
+            throw new IllegalStateException("An event filter is not supported for prefetching a single-track file read from a stream!");
+        PrefetchingMidiEventIterator prefetchingIterator = new PrefetchingMidiEventIterator(this,getTrackIterators(),bufferCapacity);
+        if (prefetchingIterators==null)
+            prefetchingIterators = new ArrayList<PrefetchingMidiEventIterator>();
+        prefetchingIterators.add(prefetchingIterator);
+        return prefetchingIterator;
+    }
+    
     public void close() throws IOException
     {
+        // The background threads must stop before the track readers and the chunk buffers they decode from are released. A single-track
+        // stream is closed first, which ends a read that a background thread is blocked in for streams that support this (such as sockets).
+        if ((stream!=null) && (trackChunks==null))
+            stream.close();
+        if (prefetchingIterators!=null)
+            for (PrefetchingMidiEventIterator prefetchingIterator : prefetchingIterators)
+                prefetchingIterator.close();
         if (trackReaders!=null)
             for (MidiTrackReader nextReader : trackReaders)
                 if (nextReader!=null)
                     nextReader.close();
-        stream.close();
+        if (chunkStore!=null)
+            chunkStore.close();
+        if (recorder!=null)
+            recorder.flush();
+        if (stream!=null)
+            stream.close();
     }
     
     
     private class MidiEventIterator implements Iterator<MidiEvent>
     {
-        private ArrayList<Pair<Iterator<MidiEvent>,MidiEvent>> tracks;
+        // Binary min-heap of the tracks that still have events, ordered by the total time of their pending event and then by track number.
+        private TrackHead[] heap;
+        private int heapSize = 0;
         private MidiEvent nextMidiEvent = null;
+        private TempoMap tempoMap;
+        private boolean addTempoChanges;
+        private long previousTick;
+        private MidiReaderMetrics.Recorder recorder;
         
         public MidiEventIterator() throws IOException, MidiFileFormatException
         {
-            getMidiFileInfo();
-            tracks = new ArrayList<Pair<Iterator<MidiEvent>,MidiEvent>>(trackReaders.length);
-            for (MidiTrackReader nextReader : trackReaders)
+            this(getTrackIterators(),startTick,MidiReader.this.recorder);
+        }
+        
+        // The delta time of the first event is relative to the given tick. The merge time is counted into the given recorder, if any.
+        public MidiEventIterator(Iterator<MidiEvent>[] trackIterators,long previousTick,MidiReaderMetrics.Recorder recorder) throws IOException, MidiFileFormatException
+        {
+            this.previousTick = previousTick;
+            this.recorder = recorder;
+            tempoMap = getStampingTempoMap();
+            addTempoChanges = ! tempoMapComplete;
+            heap = new TrackHead[trackIterators.length];
+            for (int trackNumber=0; trackNumber<trackIterators.length; trackNumber++)
             {
-                Iterator<MidiEvent> it = nextReader.iterator();
-                MidiEvent midiEvent = it.hasNext() ? it.next() : null;
-                tracks.add(new Pair<Iterator<MidiEvent>,MidiEvent>(it,midiEvent));
+                Iterator<MidiEvent> it = trackIterators[trackNumber];
+                if (it.hasNext())
+                    heap[heapSize++] = new TrackHead(it,it.next(),trackNumber);
             }
+            for (int i=heapSize/2 - 1; i>=0; i--)
+                siftDown(i);
             next();
         }
         
@@ -122,17 +321,27 @@ public class MidiReader implements Iterable<MidiEvent>,Closeable
         public MidiEvent next()
         {
             MidiEvent currentMidiEvent = nextMidiEvent;
-            Pair<Iterator<MidiEvent>,MidiEvent> pairOfNextEvent = null;
-            for (Pair<Iterator<MidiEvent>,MidiEvent> nextPair : tracks)
-                if ((nextPair.second!=null) && ((pairOfNextEvent==null) || (nextPair.second.getTotalTime()<pairOfNextEvent.second.getTotalTime())))
-                    pairOfNextEvent = nextPair;
-            if (pairOfNextEvent==null)
+            if (heapSize==0)
                 nextMidiEvent = null;
             else
             {
-                nextMidiEvent = pairOfNextEvent.second;
-                pairOfNextEvent.second = pairOfNextEvent.first.hasNext() ? pairOfNextEvent.first.next() : null;
-                nextMidiEvent.setDeltaTime((int) (nextMidiEvent.getTotalTime() - (currentMidiEvent==null ? 0 : currentMidiEvent.getTotalTime())));
+                TrackHead head = heap[0];
+                nextMidiEvent = head.midiEvent;
+                if (head.iterator.hasNext())
+                    head.midiEvent = head.iterator.next();
+                else
+                {
+                    heap[0] = heap[--heapSize];
+                    heap[heapSize] = null;
+                }
+                long mergeStartNanos = recorder==null ? 0 : System.nanoTime();
+                siftDown(0);
+                nextMidiEvent.setDeltaTime((int) (nextMidiEvent.getTotalTime() - (currentMidiEvent==null ? previousTick : currentMidiEvent.getTotalTime())));
+                nextMidiEvent.setTotalMicroseconds(tempoMap.tickToMicros(nextMidiEvent.getTotalTime()));
+                if (addTempoChanges && (nextMidiEvent instanceof MetaMidiEvent) && (((MetaMidiEvent) nextMidiEvent).getMetaEventType()==MetaMidiEvent.MetaEventType.SET_TEMPO))
+                    tempoMap.addTempoChange(nextMidiEvent.getTotalTime(),FileHelpers.getUnsignedLong(((MetaMidiEvent) nextMidiEvent).getContent()));
+                if (recorder!=null)
+                    recorder.mergeNanos+=System.nanoTime() - mergeStartNanos;
             }
             return currentMidiEvent;
         }
@@ -141,46 +350,238 @@ public class MidiReader implements Iterable<MidiEvent>,Closeable
         {
             throw new UnsupportedOperationException();
         }
+        
+        private void siftDown(int index)
+        {
+            if (index>=heapSize)
+                return;
+            TrackHead head = heap[index];
+            int childIndex;
+            while ((childIndex = 2*index + 1)<heapSize)
+            {
+                if ((childIndex + 1<heapSize) && heap[childIndex + 1].precedes(heap[childIndex]))
+                    childIndex++;
+                if (! heap[childIndex].precedes(head))
+                    break;
+                heap[index] = heap[childIndex];
+                index = childIndex;
+            }
+            heap[index] = head;
+        }
+    }
+    
+    private static class TrackHead
+    {
+        private Iterator<MidiEvent> iterator;
+        private MidiEvent midiEvent;
+        private int trackNumber;
+        
+        public TrackHead(Iterator<MidiEvent> iterator,MidiEvent midiEvent,int trackNumber)
+        {
+            this.iterator = iterator;
+            this.midiEvent = midiEvent;
+            this.trackNumber = trackNumber;
+        }
+        
+        public boolean precedes(TrackHead other)
+        {
+            long totalTime = midiEvent.getTotalTime(),otherTotalTime = other.midiEvent.getTotalTime();
+            return (totalTime<otherTotalTime) || ((totalTime==otherTotalTime) && (trackNumber<other.trackNumber));
+        }
+    }
+    
+    
+    Iterator<MidiEvent> mergeTracks(Iterator<MidiEvent>[] trackIterators,long previousTick,MidiReaderMetrics.Recorder mergeRecorder) throws IOException, MidiFileFormatException
+    {
+        return new MidiEventIterator(trackIterators,previousTick,mergeRecorder);
+    }
+    
+    // The reader's own recorder, for merges on the thread that uses the reader; null if metrics are disabled.
+    MidiReaderMetrics.Recorder getRecorder()
+    {
+        return recorder;
     }
     
+    // Null for single-track files read from a stream.
+    ByteBuffer[] getTrackChunks()
+    {
+        return trackChunks;
+    }
+    
+    TrackCheckpoints[] getTrackCheckpoints() throws IOException, MidiFileFormatException
+    {
+        if (trackCheckpoints==null)
+        {
+            TrackCheckpoints[] newTrackCheckpoints = new TrackCheckpoints[trackChunks.length];
+            for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+            {
+                JfrEvents.TrackDecode decodeEvent = JfrEvents.TrackDecode.beginIfEnabled();
+                newTrackCheckpoints[trackNumber] = new TrackCheckpoints(trackChunks[trackNumber]);
+                if (decodeEvent!=null)
+                    decodeEvent.finish(filePath,trackNumber,JfrEvents.PHASE_INDEX);
+            }
+            trackCheckpoints = newTrackCheckpoints;
+        }
+        return trackCheckpoints;
+    }
+    
+    MidiTrackReader[] getTrackReaders() throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        return trackReaders;
+    }
+    
+    long getStartTick()
+    {
+        return startTick;
+    }
     
-    @SuppressWarnings("resource")
     private void readMidiFileInfo() throws IOException, MidiFileFormatException
     {
-        byte[] bytes = new byte[255];
-        FileHelpers.readBytes(stream,bytes,EXPECTED_MIDI_HEADER.length);
-        if (! FileHelpers.bytesMatch(EXPECTED_MIDI_HEADER,bytes))
-            throw new MidiFileFormatException("Invalid file format (bad header)");
+        JfrEvents.FileInfoRead infoEvent = JfrEvents.FileInfoRead.beginIfEnabled();
+        JfrEvents.FileOpen openEvent = JfrEvents.FileOpen.beginIfEnabled();
+        // Map the whole file once; each track is then decoded from its own slice of the mapping.
+        if ((mappedFile==null) && (stream instanceof FileInputStream))
+            mappedFile = mapFile(((FileInputStream) stream).getChannel());
+        if (mappedFile!=null)
+            source = new ByteBufferSource(mappedFile);
+        else
+            source = new StreamByteSource(stream,bufferSize);
+        if (openEvent!=null)
+            openEvent.finish(filePath,mappedFile==null ? 0 : mappedFile.limit(),mappedFile!=null);
         
-        FileHelpers.readBytes(stream,bytes,2);
-        int fileFormatIdx = FileHelpers.getUnsignedInt(bytes,2);
-        if (fileFormatIdx>MidiFileFormat.values().length)
-            throw new MidiFileFormatException("Invalid file format number: "+fileFormatIdx+". File format number must be between 0 and "+(MidiFileFormat.values().length - 1));
-        MidiFileFormat fileFormat = MidiFileFormat.values()[fileFormatIdx];
-        if ((fileFormat!=MidiFileFormat.SingleTrack) && (filePath==null))
-            throw new MidiFileFormatException("MIDI file format "+fileFormat+" is supported only by a MidiReader that was created with a file path!");
-        FileHelpers.readBytes(stream,bytes,2);
-        int trackCount = FileHelpers.getUnsignedInt(bytes,2);
-        FileHelpers.readBytes(stream,bytes,2);
-        midiFileInfo = new MidiFileInfo(filePath,fileFormat,trackCount,FileHelpers.getUnsignedInt(bytes,2));
+        midiFileInfo = readHeader(source,filePath);
+        MidiFileFormat fileFormat = midiFileInfo.getFileFormat();
+        int trackCount = midiFileInfo.getNumberOfTracks();
+        if (recorder!=null)
+        {
+            recorder.fileCount++;
+            recorder.byteCount+=EXPECTED_MIDI_HEADER.length + 6;
+        }
         trackReaders = new MidiTrackReader[trackCount];
+        if ((mappedFile==null) && (fileFormat!=MidiFileFormat.SingleTrack))
+        {
+            // The tracks of a stream are consecutive, so each chunk is read once into a buffer before the tracks are merged.
+            chunkStore = new TrackChunkStore(TrackBufferPool.SHARED,maxHeapBufferBytes);
+            trackChunks = new ByteBuffer[trackCount];
+        }
+        else if (mappedFile!=null)
+            trackChunks = new ByteBuffer[trackCount];
+        else
+            tempoMap = new TempoMap(midiFileInfo.getTicksPerQuarterNote());
         
         for (int trackNumber=0; trackNumber<trackCount; trackNumber++)
         {
             MidiTrackReader nextTrackReader;
-            if (fileFormat==MidiFileFormat.SingleTrack)
-                nextTrackReader = new MidiTrackReader(stream,trackNumber);
+            if (trackChunks==null)
+            {
+                nextTrackReader = new MidiTrackReader(source,trackNumber);
+                nextTrackReader.setTempoMap(tempoMap);
+            }
             else
             {
-                FileInputStream mainStream = (FileInputStream) stream;
-                InputStream trackStream = new FileInputStream(filePath);
-                trackStream.skip(mainStream.getChannel().position());
-                nextTrackReader = new MidiTrackReader(trackStream,trackNumber);
+                trackChunks[trackNumber] = mappedFile==null ? chunkStore.readChunk(source) : sliceTrackChunk();
+                nextTrackReader = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),trackNumber);
             }
+            nextTrackReader.setMetrics(getMetrics());
             midiFileInfo.addTrack(nextTrackReader.readMidiTrackInfo(midiFileInfo));
+            if (recorder!=null)
+                recorder.byteCount+=nextTrackReader.getMidiTrackInfo().getTrackLengthBytes() + 8;
+            nextTrackReader.setEventFilter(eventFilter);
             trackReaders[trackNumber] = nextTrackReader;
-            if (trackNumber<trackCount - 1)
-                stream.skip(nextTrackReader.getMidiTrackInfo().getTrackLengthBytes() + 8);
+            if ((trackChunks==null) && (trackNumber<trackCount - 1))
+                source.skip(nextTrackReader.getMidiTrackInfo().getTrackLengthBytes() + 8);
+        }
+        if (infoEvent!=null)
+            infoEvent.finish(midiFileInfo);
+    }
+    
+    // Maps the rest of the file, or returns null if the channel is not a regular file (such as a pipe, a FIFO or a terminal) or the
+    // rest of the file does not fit into a single mapping. Such files are read as a stream.
+    static ByteBuffer mapFile(FileChannel channel)
+    {
+        try
+        {
+            long position = channel.position(),size = channel.size();
+            if ((size<=position) || (size - position>Integer.MAX_VALUE))
+                return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY,position,size - position);
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            return null;
         }
     }
+    
+    // Reads the MThd chunk and returns the file info without any tracks.
+    static MidiFileInfo readHeader(ByteSource source,String filePath) throws IOException, MidiFileFormatException
+    {
+        byte[] bytes = new byte[EXPECTED_MIDI_HEADER.length];
+        source.readFully(bytes,0,EXPECTED_MIDI_HEADER.length);
+        if (! FileHelpers.bytesMatch(EXPECTED_MIDI_HEADER,bytes))
+            throw new MidiFileFormatException("Invalid file format (bad header)");
+        
+        source.readFully(bytes,0,2);
+        int fileFormatIdx = FileHelpers.getUnsignedInt(bytes,2);
+        if (fileFormatIdx>=MidiFileFormat.values().length)
+            throw new MidiFileFormatException("Invalid file format number: "+fileFormatIdx+". File format number must be between 0 and "+(MidiFileFormat.values().length - 1));
+        MidiFileFormat fileFormat = MidiFileFormat.values()[fileFormatIdx];
+        source.readFully(bytes,0,2);
+        int trackCount = FileHelpers.getUnsignedInt(bytes,2);
+        source.readFully(bytes,0,2);
+        return new MidiFileInfo(filePath,fileFormat,trackCount,FileHelpers.getUnsignedInt(bytes,2));
+    }
+    
+    private Iterator<MidiEvent>[] getTrackIterators() throws IOException, MidiFileFormatException
+    {
+        getMidiFileInfo();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Iterator<MidiEvent>[] trackIterators = new Iterator[trackReaders.length];
+        for (int trackNumber=0; trackNumber<trackReaders.length; trackNumber++)
+            trackIterators[trackNumber] = trackReaders[trackNumber].iterator();
+        return trackIterators;
+    }
+    
+    // Without a complete tempo map (single-track files read from a stream), the map holds the tempo changes read so far and the caller adds the ones it encounters.
+    TempoMap getStampingTempoMap() throws IOException, MidiFileFormatException
+    {
+        return trackChunks==null ? tempoMap : getTempoMap();
+    }
+    
+    private TempoMap readTempoMap() throws IOException, MidiFileFormatException
+    {
+        ArrayList<long[]> tempoChanges = new ArrayList<long[]>();
+        for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+        {
+            JfrEvents.TrackDecode decodeEvent = JfrEvents.TrackDecode.beginIfEnabled();
+            MidiTrackReader scanner = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),0);
+            scanner.readTrackHeader();
+            do
+            {
+                scanner.decodeNextEvent();
+                if (scanner.isTempoChange())
+                    tempoChanges.add(new long[] { scanner.getRunningTotalTime(), scanner.getTempo() });
+            }
+            while (! scanner.isTrackEnd());
+            if (decodeEvent!=null)
+                decodeEvent.finish(filePath,trackNumber,JfrEvents.PHASE_TEMPO_MAP);
+        }
+        tempoChanges.sort(Comparator.comparingLong(tempoChange -> tempoChange[0]));
+        TempoMap completeTempoMap = new TempoMap(midiFileInfo.getTicksPerQuarterNote());
+        for (long[] tempoChange : tempoChanges)
+            completeTempoMap.addTempoChange(tempoChange[0],tempoChange[1]);
+        return completeTempoMap;
+    }
+    
+    private ByteBuffer sliceTrackChunk() throws MidiFileFormatException
+    {
+        int chunkStart = mappedFile.position();
+        if (mappedFile.remaining()<8)
+            throw new MidiFileFormatException("Unexpected end of file");
+        long chunkLength = (mappedFile.getInt(chunkStart + 4) & 0xFFFFFFFFL) + 8;
+        if (chunkLength>mappedFile.remaining())
+            throw new MidiFileFormatException("Unexpected end of file");
+        mappedFile.position(chunkStart + (int) chunkLength);
+        return mappedFile.slice(chunkStart,(int) chunkLength);
+    }
 }
@@ -0,0 +1,221 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Opt-in counters for MidiReaders and MidiTrackReaders, which may be shared by any number of readers on any number of threads
+// (such as those of a MidiCorpusScanner). A reader counts into the plain fields of a Recorder of its own, so that the decoding
+// loop only tests whether metrics are enabled, and adds them to the striped counters here when it is closed. Timing calls
+// System.nanoTime() a few times per event, which is noticeable next to the decoding of an event, so the decode and merge times
+// are best compared with each other rather than with the time of an uninstrumented read.
+public final class MidiReaderMetrics
+{
+    private LongAdder fileCount = new LongAdder();
+    private LongAdder byteCount = new LongAdder();
+    private LongAdder noteEventCount = new LongAdder();
+    private LongAdder stateChangeEventCount = new LongAdder();
+    private LongAdder metaEventCount = new LongAdder();
+    private LongAdder systemExclusiveEventCount = new LongAdder();
+    private LongAdder runningStatusCount = new LongAdder();
+    private LongAdder decodeNanos = new LongAdder();
+    private LongAdder mergeNanos = new LongAdder();
+    private LongAdder midiEventAllocationCount = new LongAdder();
+    private LongAdder payloadCopyCount = new LongAdder();
+    
+    // The counts of the readers closed so far; readers that are still open are not included yet.
+    public Snapshot snapshot()
+    {
+        return new Snapshot(this);
+    }
+    
+    public void reset()
+    {
+        for (LongAdder counter : new LongAdder[] { fileCount, byteCount, noteEventCount, stateChangeEventCount, metaEventCount, systemExclusiveEventCount, runningStatusCount, decodeNanos, mergeNanos, midiEventAllocationCount, payloadCopyCount })
+            counter.reset();
+    }
+    
+    public String toString()
+    {
+        return snapshot().toString();
+    }
+    
+    
+    public static final class Snapshot
+    {
+        private long fileCount,byteCount,noteEventCount,stateChangeEventCount,metaEventCount,systemExclusiveEventCount,runningStatusCount;
+        private long decodeNanos,mergeNanos,midiEventAllocationCount,payloadCopyCount;
+        
+        private Snapshot(MidiReaderMetrics metrics)
+        {
+            fileCount = metrics.fileCount.sum();
+            byteCount = metrics.byteCount.sum();
+            noteEventCount = metrics.noteEventCount.sum();
+            stateChangeEventCount = metrics.stateChangeEventCount.sum();
+            metaEventCount = metrics.metaEventCount.sum();
+            systemExclusiveEventCount = metrics.systemExclusiveEventCount.sum();
+            runningStatusCount = metrics.runningStatusCount.sum();
+            decodeNanos = metrics.decodeNanos.sum();
+            mergeNanos = metrics.mergeNanos.sum();
+            midiEventAllocationCount = metrics.midiEventAllocationCount.sum();
+            payloadCopyCount = metrics.payloadCopyCount.sum();
+        }
+        
+        // The number of MidiReaders whose file header was read.
+        public long getFileCount()
+        {
+            return fileCount;
+        }
+        
+        // The bytes of the file headers and of the track chunks read (or mapped) by the readers.
+        public long getByteCount()
+        {
+            return byteCount;
+        }
+        
+        public long getNoteEventCount()
+        {
+            return noteEventCount;
+        }
+        
+        public long getStateChangeEventCount()
+        {
+            return stateChangeEventCount;
+        }
+        
+        public long getMetaEventCount()
+        {
+            return metaEventCount;
+        }
+        
+        public long getSystemExclusiveEventCount()
+        {
+            return systemExclusiveEventCount;
+        }
+        
+        // The number of events decoded from the track data, including those skipped by an event filter or while seeking.
+        public long getEventCount()
+        {
+            return noteEventCount + stateChangeEventCount + metaEventCount + systemExclusiveEventCount;
+        }
+        
+        // The number of channel events that omitted their status byte.
+        public long getRunningStatusCount()
+        {
+            return runningStatusCount;
+        }
+        
+        // The time spent decoding events (and creating MidiEvent objects for them) while iterating.
+        public long getDecodeNanos()
+        {
+            return decodeNanos;
+        }
+        
+        // The time spent merging the tracks' events into chronological order, i.e. iterating minus decoding.
+        public long getMergeNanos()
+        {
+            return mergeNanos;
+        }
+        
+        public long getMidiEventAllocationCount()
+        {
+            return midiEventAllocationCount;
+        }
+        
+        // The number of meta and system exclusive payloads that were copied out of the track data rather than viewed in place.
+        public long getPayloadCopyCount()
+        {
+            return payloadCopyCount;
+        }
+        
+        public double getEventsPerSecond()
+        {
+            long nanos = decodeNanos + mergeNanos;
+            return nanos==0 ? 0 : getEventCount() * 1e9 / nanos;
+        }
+        
+        public String toString()
+        {
+            return getClass().getName()+"[fileCount="+fileCount+";byteCount="+byteCount+";noteEventCount="+noteEventCount+";stateChangeEventCount="+stateChangeEventCount+";metaEventCount="+metaEventCount+";systemExclusiveEventCount="+systemExclusiveEventCount+";runningStatusCount="+runningStatusCount+";decodeNanos="+decodeNanos+";mergeNanos="+mergeNanos+";midiEventAllocationCount="+midiEventAllocationCount+";payloadCopyCount="+payloadCopyCount+']';
+        }
+    }
+    
+    // The counts of one reader, or of one merge of several track readers, used by one thread at a time. The class is final, so
+    // that its methods are bound statically and counting costs a field increment.
+    static final class Recorder
+    {
+        private MidiReaderMetrics metrics;
+        long fileCount,byteCount,noteEventCount,stateChangeEventCount,metaEventCount,systemExclusiveEventCount,runningStatusCount;
+        long decodeNanos,mergeNanos,midiEventAllocationCount,payloadCopyCount;
+        
+        private Recorder(MidiReaderMetrics metrics)
+        {
+            this.metrics = metrics;
+        }
+        
+        MidiReaderMetrics getMetrics()
+        {
+            return metrics;
+        }
+        
+        void eventDecoded(int status)
+        {
+            if (status<0xB0)
+                noteEventCount++;
+            else if (status<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+                stateChangeEventCount++;
+            else if (status==MidiTrackReader.STATUS_META)
+                metaEventCount++;
+            else
+                systemExclusiveEventCount++;
+        }
+        
+        // Adds the counts to the metrics and starts counting from zero.
+        void flush()
+        {
+            add(metrics.fileCount,fileCount);
+            add(metrics.byteCount,byteCount);
+            add(metrics.noteEventCount,noteEventCount);
+            add(metrics.stateChangeEventCount,stateChangeEventCount);
+            add(metrics.metaEventCount,metaEventCount);
+            add(metrics.systemExclusiveEventCount,systemExclusiveEventCount);
+            add(metrics.runningStatusCount,runningStatusCount);
+            add(metrics.decodeNanos,decodeNanos);
+            add(metrics.mergeNanos,mergeNanos);
+            add(metrics.midiEventAllocationCount,midiEventAllocationCount);
+            add(metrics.payloadCopyCount,payloadCopyCount);
+            fileCount = byteCount = noteEventCount = stateChangeEventCount = metaEventCount = systemExclusiveEventCount = runningStatusCount = 0;
+            decodeNanos = mergeNanos = midiEventAllocationCount = payloadCopyCount = 0;
+        }
+        
+        private static void add(LongAdder counter,long count)
+        {
+            if (count!=0)
+                counter.add(count);
+        }
+    }
+    
+    
+    Recorder newRecorder()
+    {
+        return new Recorder(this);
+    }
+}
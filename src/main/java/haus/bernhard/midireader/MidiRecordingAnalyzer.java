@@ -0,0 +1,194 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+// Summarizes the MIDI Reader events of a Java Flight Recorder recording: the count and the total, mean and maximum duration of
+// each event type (the lateness, for late dispatches), the slowest file info reads, and how many merge stalls and late dispatches
+// coincided with a garbage collection pause. From the command line:
+//   java -cp midireader.jar haus.bernhard.midireader.MidiRecordingAnalyzer recording.jfr
+public class MidiRecordingAnalyzer
+{
+    private static final String GC_PAUSE_EVENT_NAME = "jdk.GCPhasePause";
+    private static final int SLOWEST_FILE_COUNT = 5;
+    
+    private Path recordingFile;
+    private TreeMap<String,EventStatistics> eventStatistics = new TreeMap<String,EventStatistics>();
+    private ArrayList<FileInfoRead> fileInfoReads = new ArrayList<FileInfoRead>();
+    private int mergeStallCount = 0,lateDispatchCount = 0;
+    private int mergeStallsInGcPause = 0,lateDispatchesInGcPause = 0;
+    
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length==0)
+        {
+            System.err.println("Usage: java "+MidiRecordingAnalyzer.class.getName()+" <recording.jfr> ...");
+            System.exit(1);
+        }
+        for (String fileName : args)
+            System.out.println(new MidiRecordingAnalyzer(Path.of(fileName)).getSummary());
+    }
+    
+    public MidiRecordingAnalyzer(Path recordingFile) throws IOException
+    {
+        this.recordingFile = recordingFile;
+        ArrayList<long[]> gcPauses = new ArrayList<long[]>(),mergeStalls = new ArrayList<long[]>(),lateDispatches = new ArrayList<long[]>();
+        try (RecordingFile recording = new RecordingFile(recordingFile))
+        {
+            while (recording.hasMoreEvents())
+            {
+                RecordedEvent event = recording.readEvent();
+                String eventName = event.getEventType().getName();
+                if (eventName.equals(GC_PAUSE_EVENT_NAME))
+                    gcPauses.add(new long[] { toNanos(event.getStartTime()), toNanos(event.getEndTime()) });
+                if (! eventName.startsWith(JfrEvents.NAME_PREFIX))
+                    continue;
+                
+                String label = event.getEventType().getLabel();
+                long durationNanos = event.getDuration().toNanos();
+                if (eventName.equals(JfrEvents.TRACK_DECODE))
+                    label+=" ("+event.getString("phase")+')';
+                else if (eventName.equals(JfrEvents.FILE_INFO_READ))
+                    fileInfoReads.add(new FileInfoRead(event.getString("path"),durationNanos));
+                else if (eventName.equals(JfrEvents.MERGE_STALL))
+                    mergeStalls.add(new long[] { toNanos(event.getStartTime()), toNanos(event.getEndTime()) });
+                else if (eventName.equals(JfrEvents.LATE_DISPATCH))
+                {
+                    durationNanos = event.getDuration("lateness").toNanos();
+                    long dispatchNanos = toNanos(event.getStartTime());
+                    lateDispatches.add(new long[] { dispatchNanos - durationNanos, dispatchNanos });
+                }
+                eventStatistics.computeIfAbsent(label,newLabel -> new EventStatistics()).add(durationNanos);
+            }
+        }
+        gcPauses.sort(Comparator.comparingLong(gcPause -> gcPause[0]));
+        mergeStallCount = mergeStalls.size();
+        mergeStallsInGcPause = countOverlapping(mergeStalls,gcPauses);
+        lateDispatchCount = lateDispatches.size();
+        lateDispatchesInGcPause = countOverlapping(lateDispatches,gcPauses);
+        fileInfoReads.sort(Comparator.comparingLong((FileInfoRead fileInfoRead) -> fileInfoRead.durationNanos).reversed());
+    }
+    
+    public Path getRecordingFile()
+    {
+        return recordingFile;
+    }
+    
+    public String getSummary()
+    {
+        StringBuilder summary = new StringBuilder("Recording: "+recordingFile+'\n');
+        if (eventStatistics.isEmpty())
+            return summary.append("No MIDI Reader events\n").toString();
+        for (Map.Entry<String,EventStatistics> entry : eventStatistics.entrySet())
+        {
+            EventStatistics statistics = entry.getValue();
+            summary.append(String.format(Locale.ROOT,"%-40s %8d events, total %s, mean %s, max %s%n",entry.getKey(),statistics.count,formatMillis(statistics.totalNanos),formatMillis(statistics.totalNanos/statistics.count),formatMillis(statistics.maxNanos)));
+        }
+        if (! fileInfoReads.isEmpty())
+        {
+            summary.append("Slowest file info reads:\n");
+            for (FileInfoRead fileInfoRead : fileInfoReads.subList(0,Math.min(SLOWEST_FILE_COUNT,fileInfoReads.size())))
+                summary.append("  ").append(formatMillis(fileInfoRead.durationNanos)).append("  ").append(fileInfoRead.path==null ? "(stream)" : fileInfoRead.path).append('\n');
+        }
+        if (mergeStallCount>0)
+            summary.append("Merge stalls during a GC pause: "+mergeStallsInGcPause+" of "+mergeStallCount+'\n');
+        if (lateDispatchCount>0)
+            summary.append("Late dispatches during a GC pause: "+lateDispatchesInGcPause+" of "+lateDispatchCount+'\n');
+        return summary.toString();
+    }
+    
+    public String toString()
+    {
+        return getClass().getName()+"[recordingFile="+recordingFile+";eventTypeCount="+eventStatistics.size()+";mergeStallCount="+mergeStallCount+";lateDispatchCount="+lateDispatchCount+']';
+    }
+    
+    
+    private static class EventStatistics
+    {
+        private long count = 0,totalNanos = 0,maxNanos = 0;
+        
+        private void add(long durationNanos)
+        {
+            count++;
+            totalNanos+=durationNanos;
+            maxNanos = Math.max(maxNanos,durationNanos);
+        }
+    }
+    
+    private static class FileInfoRead
+    {
+        private String path;
+        private long durationNanos;
+        
+        public FileInfoRead(String path,long durationNanos)
+        {
+            this.path = path;
+            this.durationNanos = durationNanos;
+        }
+    }
+    
+    
+    // Counts the intervals that overlap one of the pauses, which are sorted by their start and do not overlap each other.
+    private static int countOverlapping(ArrayList<long[]> intervals,ArrayList<long[]> pauses)
+    {
+        int count = 0;
+        for (long[] interval : intervals)
+        {
+            // Binary search for the last pause that starts before the interval ends.
+            int low = 0,high = pauses.size() - 1,lastPause = -1;
+            while (low<=high)
+            {
+                int middle = (low + high)>>>1;
+                if (pauses.get(middle)[0]<=interval[1])
+                {
+                    lastPause = middle;
+                    low = middle + 1;
+                }
+                else
+                    high = middle - 1;
+            }
+            if ((lastPause>=0) && (pauses.get(lastPause)[1]>=interval[0]))
+                count++;
+        }
+        return count;
+    }
+    
+    private static long toNanos(Instant instant)
+    {
+        return instant.getEpochSecond()*1000000000L + instant.getNano();
+    }
+    
+    private static String formatMillis(long nanos)
+    {
+        return String.format(Locale.ROOT,"%.3f ms",nanos/1e6);
+    }
+}
@@ -23,7 +23,13 @@ package haus.bernhard.midireader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import haus.bernhard.midireader.midievent.*;
 import haus.bernhard.midireader.util.FileHelpers;
@@ -31,17 +37,58 @@ import haus.bernhard.midireader.util.FileHelpers;
 public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
 {
     private static final byte[] EXPECTED_TRACK_START = new byte[] { 0x4D, 0x54, 0x72, 0x6B };
+    static final int STATUS_SYSTEM_EXCLUSIVE = 0xF0, STATUS_SYSTEM_EXCLUSIVE_ESCAPE = 0xF7, STATUS_META = 0xFF;
+    static final int META_TYPE_TRACK_NAME = 0x03, META_TYPE_TRACK_END = 0x2F, META_TYPE_SET_TEMPO = 0x51, META_TYPE_TIME_SIGNATURE = 0x58;
+    private static final NoteMidiEvent.NoteEventType[] NOTE_EVENT_TYPES = NoteMidiEvent.NoteEventType.values();
+    private static final StateChangeMidiEvent.StateChangeType[] STATE_CHANGE_TYPES = StateChangeMidiEvent.StateChangeType.values();
     
-    private InputStream stream;
+    private ByteSource source;
+    private ByteBuffer sourceBuffer;
     private int trackNumber;
     private MidiTrackInfo trackInfo = null;
-    private MidiEvent previousVoiceCategoryMidiEvent = null;
+    private TempoMap tempoMap = null;
+    private MidiEventFilter eventFilter = null;
+    private MidiReaderMetrics.Recorder recorder = null;
+    private Channel[] channels = new Channel[16];
+    private MidiEvent firstNoteMidiEvent = null;
+    private boolean trackEndReached = false;
+    // A bit per channel whose damper pedal is down after the events decoded so far.
+    private int sustainPedalChannels = 0;
+    private int runningStatus = 0;
     private long runningTotalTime = 0;
+    // Events that restore the channel state after a seek, emitted before the event at which decoding resumes.
+    private int[] chaseEvents = null;
+    private int chaseIndex;
+    private long chaseTotalTime,resumeTotalTime;
+    
+    // The most recently decoded event, in raw form. The MidiEvent objects are created from these fields, and MidiEventCursor reads them directly.
+    // When decoding from a buffer, the payload of a meta or system exclusive event is left in the buffer at payloadPosition until getPayload()
+    // copies it into the payload array.
+    int status,data1,data2,deltaTime,payloadLength;
+    private int payloadPosition = -1;
+    private byte[] payload = new byte[64];
     
     public MidiTrackReader(InputStream stream,int trackNumber)
     {
-        this.stream = stream;
+        this(new StreamByteSource(stream),trackNumber);
+    }
+    
+    public MidiTrackReader(InputStream stream,int trackNumber,int bufferSize)
+    {
+        this(new StreamByteSource(stream,bufferSize),trackNumber);
+    }
+    
+    MidiTrackReader(ByteSource source,int trackNumber)
+    {
+        this.source = source;
         this.trackNumber = trackNumber;
+        if (source instanceof ByteBufferSource)
+            sourceBuffer = ((ByteBufferSource) source).getBuffer();
+    }
+    
+    public int getTrackNumber()
+    {
+        return trackNumber;
     }
     
     public MidiTrackInfo getMidiTrackInfo()
@@ -69,9 +116,16 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
         }
     }
     
+    public Stream<MidiEvent> events()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),Spliterator.ORDERED | Spliterator.NONNULL),false);
+    }
+    
     public void close() throws IOException
     {
-        stream.close();
+        if (recorder!=null)
+            recorder.flush();
+        source.close();
     }
     
     
@@ -81,7 +135,12 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
         
         public MidiEventIterator() throws IOException, MidiFileFormatException
         {
-            nextMidiEvent = previousVoiceCategoryMidiEvent;
+            if (trackEndReached)
+                nextMidiEvent = null;
+            else if (eventFilter==null)
+                nextMidiEvent = firstNoteMidiEvent;
+            else
+                nextMidiEvent = eventFilter.acceptsTrack(trackNumber) ? readNextAcceptedMidiEvent(true) : null;
         }
         
         public boolean hasNext()
@@ -91,16 +150,17 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
 
         public MidiEvent next()
         {
+            long startNanos = recorder==null ? 0 : System.nanoTime();
             MidiEvent currentMidiEvent = nextMidiEvent;
             if (currentMidiEvent instanceof StateChangeMidiEvent)
                 updateChannelInfo((StateChangeMidiEvent) currentMidiEvent);
-            if ((currentMidiEvent instanceof MetaMidiEvent) && (((MetaMidiEvent) currentMidiEvent).getMetaEventType()==MetaMidiEvent.MetaEventType.TRACK_END))
+            if (isTrackEnd(currentMidiEvent))
                 nextMidiEvent = null;
             else
             {
                 try
                 {
-                    nextMidiEvent = readNextMidiEvent();
+                    nextMidiEvent = eventFilter==null ? readNextMidiEvent() : readNextAcceptedMidiEvent(false);
                 } 
                 catch (IOException e)
                 {
@@ -111,6 +171,8 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
                     throw new RuntimeException(e);
                 }
             }
+            if (recorder!=null)
+                recorder.decodeNanos+=System.nanoTime() - startNanos;
             return currentMidiEvent;
         }
 
@@ -123,63 +185,420 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
     
     protected MidiTrackInfo readMidiTrackInfo(MidiFileInfo midiFileInfo) throws IOException,MidiFileFormatException
     {
-        byte[] bytes = new byte[255];
-        FileHelpers.readBytes(stream,bytes,EXPECTED_TRACK_START.length);
-        if (! FileHelpers.bytesMatch(EXPECTED_TRACK_START,bytes))
-            throw new MidiFileFormatException("Invalid file format (bad track-section header)");
-        
-        trackInfo = new MidiTrackInfo(trackNumber);
-        FileHelpers.readBytes(stream,bytes,4);
-        trackInfo.setTrackLengthBytes(FileHelpers.getUnsignedLong(bytes,4));
-        
-        MidiEvent nextMidiEvent;
-        do
+        JfrEvents.TrackDecode decodeEvent = JfrEvents.TrackDecode.beginIfEnabled();
+        long startNanos = recorder==null ? 0 : System.nanoTime();
+        try
+        {
+            return readPreamble(midiFileInfo);
+        }
+        finally
+        {
+            if (recorder!=null)
+                recorder.decodeNanos+=System.nanoTime() - startNanos;
+            if (decodeEvent!=null)
+                decodeEvent.finish(midiFileInfo.getFileName(),trackNumber,JfrEvents.PHASE_PREAMBLE);
+        }
+    }
+    
+    private MidiTrackInfo readPreamble(MidiFileInfo midiFileInfo) throws IOException,MidiFileFormatException
+    {
+        beginTrack();
+        // The events before the first note are decoded in place; only the first note is created as a MidiEvent, as the iterators start with it.
+        while (true)
         {
-            nextMidiEvent = readNextMidiEvent();
-            if (nextMidiEvent instanceof MetaMidiEvent)
+            decodeNextEvent();
+            if (isNoteEvent())
+            {
+                firstNoteMidiEvent = createMidiEvent();
+                return trackInfo;
+            }
+            if (isMetaEvent())
             {
-                MetaMidiEvent nextMetaMidiEvent = (MetaMidiEvent) nextMidiEvent;
-                switch (nextMetaMidiEvent.getMetaEventType())
+                switch (data1)
                 {
-                    case TRACK_NAME : { 
-                        String trackName = nextMetaMidiEvent.getContentAsString();
+                    case META_TYPE_TRACK_NAME : {
+                        String trackName = getPayloadAsString();
                         trackInfo.setTrackName(trackName);
                         if (trackNumber==0)
-                            midiFileInfo.setMainTrackName(trackName); 
+                            midiFileInfo.setMainTrackName(trackName);
                         break;
                     }
-                    case TIME_SIGNATURE : {
-                        byte[] eventContent = nextMetaMidiEvent.getContent();
-                        midiFileInfo.setTimeSignature(new TimeSignature(eventContent[0],1<<eventContent[1]));
-                        midiFileInfo.setTicksPerMetronomeClick(eventContent[2]);
+                    case META_TYPE_TIME_SIGNATURE : {
+                        midiFileInfo.setTimeSignature(getTimeSignature());
+                        midiFileInfo.setTicksPerMetronomeClick(getPayload()[2]);
+                        break;
+                    }
+                    case META_TYPE_SET_TEMPO : {
+                        midiFileInfo.setMicrosecondsPerQuarterNote(getTempo());
+                        if (tempoMap!=null)
+                            tempoMap.addTempoChange(runningTotalTime,getTempo());
                         break;
                     }
-                    case SET_TEMPO : midiFileInfo.setMicrosecondsPerQuarterNote(FileHelpers.getUnsignedLong(nextMetaMidiEvent.getContent())); break;
                     default : break;
                 }
+                if (isTrackEnd())
+                {
+                    trackEndReached = true;
+                    return trackInfo;
+                }
             }
-            else if (nextMidiEvent instanceof StateChangeMidiEvent)
-                updateChannelInfo((StateChangeMidiEvent) nextMidiEvent);
+            else
+                updateChannelInfo();
         }
-        while ((! (nextMidiEvent instanceof NoteMidiEvent)) && ((! (nextMidiEvent instanceof MetaMidiEvent)) || (((MetaMidiEvent) nextMidiEvent).getMetaEventType()!=MetaMidiEvent.MetaEventType.TRACK_END)));
+    }
+    
+    MidiTrackInfo beginTrack() throws IOException,MidiFileFormatException
+    {
+        trackInfo = new MidiTrackInfo(trackNumber);
+        trackInfo.setTrackLengthBytes(readTrackHeader());
         return trackInfo;
     }
     
+    long readTrackHeader() throws IOException,MidiFileFormatException
+    {
+        byte[] bytes = new byte[EXPECTED_TRACK_START.length];
+        source.readFully(bytes,0,EXPECTED_TRACK_START.length);
+        if (! FileHelpers.bytesMatch(EXPECTED_TRACK_START,bytes))
+            throw new MidiFileFormatException("Invalid file format (bad track-section header)");
+        source.readFully(bytes,0,4);
+        return FileHelpers.getUnsignedLong(bytes,4);
+    }
+    
+    // Applies to the iterators created afterwards, and to the decoding of meta event payloads.
+    public void setEventFilter(MidiEventFilter newEventFilter)
+    {
+        eventFilter = newEventFilter;
+    }
+    
+    public MidiEventFilter getEventFilter()
+    {
+        return eventFilter;
+    }
+    
+    // Counts the events decoded from now on into the given metrics (added to them when the reader is closed); null disables counting.
+    public void setMetrics(MidiReaderMetrics newMetrics)
+    {
+        if (recorder!=null)
+            recorder.flush();
+        recorder = newMetrics==null ? null : newMetrics.newRecorder();
+    }
+    
+    public MidiReaderMetrics getMetrics()
+    {
+        return recorder==null ? null : recorder.getMetrics();
+    }
+    
+    // Tempo changes read by readMidiTrackInfo() are added to the given map.
+    void setTempoMap(TempoMap newTempoMap)
+    {
+        tempoMap = newTempoMap;
+    }
+    
+    boolean isTrackEndReached()
+    {
+        return trackEndReached;
+    }
+    
+    int getSustainPedalChannels()
+    {
+        return sustainPedalChannels;
+    }
+    
+    boolean isNoteEvent()
+    {
+        return status<0xB0;
+    }
+    
+    boolean isMetaEvent()
+    {
+        return status==STATUS_META;
+    }
+    
+    // Meta and system exclusive events have a payload.
+    boolean hasPayload()
+    {
+        return status>=STATUS_SYSTEM_EXCLUSIVE;
+    }
+    
+    // Returns the array holding the current event's payload in its first payloadLength bytes.
+    byte[] getPayload()
+    {
+        if (payloadPosition>=0)
+        {
+            if (payloadLength>payload.length)
+                payload = new byte[Math.max(payloadLength,payload.length*2)];
+            sourceBuffer.get(payloadPosition,payload,0,payloadLength);
+            payloadPosition = -1;
+        }
+        return payload;
+    }
+    
+    // Returns the current event's payload as a read-only buffer that remains valid after decoding moves on: a view of the track chunk
+    // if it is mapped from a file, or else a copy, since pooled heap chunks are reused once their reader is closed.
+    ByteBuffer getPayloadView()
+    {
+        if ((payloadPosition>=0) && sourceBuffer.isDirect())
+        {
+            ByteBuffer view = sourceBuffer.slice(payloadPosition,payloadLength);
+            return view.isReadOnly() ? view : view.asReadOnlyBuffer();
+        }
+        if (recorder!=null)
+            recorder.payloadCopyCount++;
+        return ByteBuffer.wrap(Arrays.copyOf(getPayload(),payloadLength)).asReadOnlyBuffer();
+    }
+    
+    String getPayloadAsString()
+    {
+        return new String(getPayload(),0,payloadLength,MetaMidiEvent.DEFAULT_TEXT_CHARSET);
+    }
+    
+    TimeSignature getTimeSignature()
+    {
+        byte[] payload = getPayload();
+        return new TimeSignature(payload[0],1<<payload[1]);
+    }
+    
+    boolean isTrackEnd()
+    {
+        return (status==STATUS_META) && (data1==META_TYPE_TRACK_END);
+    }
+    
+    boolean isTempoChange()
+    {
+        return (status==STATUS_META) && (data1==META_TYPE_SET_TEMPO);
+    }
+    
+    long getTempo()
+    {
+        return FileHelpers.getUnsignedLong(getPayload(),payloadLength);
+    }
+    
+    int getRunningStatus()
+    {
+        return runningStatus;
+    }
+    
+    // Positions the track at its first event at or after the given tick, preceded by events that restore the channel state at that tick.
+    void seekToTick(TrackCheckpoints checkpoints,long tick) throws IOException, MidiFileFormatException
+    {
+        chaseEvents = null;
+        int checkpoint = checkpoints.find(tick);
+        ChannelState channelState = checkpoints.getChannelState(checkpoint).snapshot();
+        boolean endsBeforeTick = scanToTick(checkpoints,checkpoint,tick,channelState);
+        
+        int[] newChaseEvents = channelState.toChaseEvents();
+        if (endsBeforeTick && (newChaseEvents.length==0))
+        {
+            trackEndReached = true;
+            firstNoteMidiEvent = null;
+            return;
+        }
+        if (endsBeforeTick)
+        {
+            // The channel state still applies to the other tracks' notes, so it is restored and followed by the track end at the seek tick.
+            newChaseEvents = Arrays.copyOf(newChaseEvents,newChaseEvents.length + 1);
+            newChaseEvents[newChaseEvents.length - 1] = (0xFF<<16) | (META_TYPE_TRACK_END<<8);
+        }
+        if (newChaseEvents.length>0)
+        {
+            chaseEvents = newChaseEvents;
+            chaseIndex = 0;
+            chaseTotalTime = tick;
+            resumeTotalTime = runningTotalTime;
+        }
+        trackEndReached = false;
+        decodeNextEvent();
+        firstNoteMidiEvent = createMidiEvent();
+    }
+    
+    // Positions an unread track (after readMidiTrackInfo()) at its first event at or after the given tick, without chase events,
+    // unless its first note is at or after the tick already. Returns the tick of the last skipped event that the track's iterator
+    // would have returned, or -1 if there is none.
+    long skipToTick(TrackCheckpoints checkpoints,long tick) throws IOException, MidiFileFormatException
+    {
+        if (trackEndReached || (firstNoteMidiEvent.getTotalTime()>=tick))
+            return -1;
+        int checkpoint = checkpoints.find(tick);
+        // The scan only updates the pedal state from the checkpoint on.
+        ChannelState checkpointState = checkpoints.getChannelState(checkpoint);
+        sustainPedalChannels = 0;
+        for (int channelNumber=0; channelNumber<16; channelNumber++)
+            if (checkpointState.isSustainPedalDown(channelNumber))
+                sustainPedalChannels|=1<<channelNumber;
+        if (scanToTick(checkpoints,checkpoint,tick,null))
+        {
+            trackEndReached = true;
+            firstNoteMidiEvent = null;
+            return runningTotalTime;
+        }
+        long previousTotalTime = runningTotalTime;
+        decodeNextEvent();
+        firstNoteMidiEvent = createMidiEvent();
+        return previousTotalTime;
+    }
+    
+    // Returns the channel state of a track chunk after its events before the given tick, replayed from the nearest checkpoint.
+    static ChannelState readChannelState(ByteBuffer trackChunk,TrackCheckpoints checkpoints,long tick) throws IOException, MidiFileFormatException
+    {
+        MidiTrackReader scanner = new MidiTrackReader(new ByteBufferSource(trackChunk.duplicate()),0);
+        int checkpoint = checkpoints.find(tick);
+        ChannelState channelState = checkpoints.getChannelState(checkpoint).snapshot();
+        scanner.scanToTick(checkpoints,checkpoint,tick,channelState);
+        return channelState;
+    }
+    
+    long getRunningTotalTime()
+    {
+        return runningTotalTime;
+    }
+    
+    private static boolean isTrackEnd(MidiEvent midiEvent)
+    {
+        return (midiEvent instanceof MetaMidiEvent) && (((MetaMidiEvent) midiEvent).getMetaEventType()==MetaMidiEvent.MetaEventType.TRACK_END);
+    }
+    
     private void updateChannelInfo(StateChangeMidiEvent midiEvent)
     {
-        Channel channel = trackInfo.getChannel(midiEvent.getChannelNumber());
+        int command = midiEvent.getStateChangeType()==StateChangeMidiEvent.StateChangeType.CONTROL_CHANGE ? 11 : 0;
+        updateChannelInfo(midiEvent.getChannelNumber(),command,midiEvent.getValue1(),midiEvent.getValue2());
+    }
+    
+    void updateChannelInfo()
+    {
+        if ((status>=0xB0) && (status<STATUS_SYSTEM_EXCLUSIVE))
+            updateChannelInfo(status & 0x0F,status>>4,data1,data2);
+    }
+    
+    private void updateChannelInfo(int channelNumber,int command,int value1,int value2)
+    {
+        Channel channel = getChannel(channelNumber);
+        if (trackInfo.getChannel(channelNumber)==null)
+            trackInfo.addChannel(channel);
+        if ((command==11) && (value1==StateChangeMidiEvent.CONTROL_CHANGE_VOLUME))
+            channel.setVolume(value2);
+        else if ((command==11) && (value1==StateChangeMidiEvent.CONTROL_CHANGE_DAMPER_PEDAL))
+            sustainPedalChannels = value2>=64 ? sustainPedalChannels | (1<<channelNumber) : sustainPedalChannels & ~(1<<channelNumber);
+    }
+    
+    // Moves to the given checkpoint and decodes forward until the next event is at or after the given tick, which is then left
+    // unread. The skipped events update the given channel state, or the track's channels if there is none. Returns true
+    // if the track ends before the tick, in which case the track end has been read.
+    private boolean scanToTick(TrackCheckpoints checkpoints,int checkpoint,long tick,ChannelState channelState) throws IOException, MidiFileFormatException
+    {
+        ByteBuffer buffer = ((ByteBufferSource) source).getBuffer();
+        buffer.position(checkpoints.getPosition(checkpoint));
+        runningTotalTime = checkpoints.getTick(checkpoint);
+        runningStatus = checkpoints.getRunningStatus(checkpoint);
+        while (true)
+        {
+            int position = buffer.position(),previousRunningStatus = runningStatus;
+            long previousTotalTime = runningTotalTime;
+            decodeNextEvent();
+            if (runningTotalTime>=tick)
+            {
+                buffer.position(position);
+                runningTotalTime = previousTotalTime;
+                runningStatus = previousRunningStatus;
+                return false;
+            }
+            if (isTrackEnd())
+                return true;
+            if (channelState!=null)
+                channelState.update(status,data1,data2);
+            else
+                updateChannelInfo();
+        }
+    }
+    
+    private Channel getChannel(int channelNumber)
+    {
+        Channel channel = channels[channelNumber];
         if (channel==null)
-            trackInfo.addChannel(channel = new Channel(trackNumber,midiEvent.getChannelNumber()));
-        if ((midiEvent.getStateChangeType()==StateChangeMidiEvent.StateChangeType.CONTROL_CHANGE) && (midiEvent.getValue1()==StateChangeMidiEvent.CONTROL_CHANGE_VOLUME))
-            channel.setVolume(midiEvent.getValue2());
+            channels[channelNumber] = channel = new Channel(trackNumber,channelNumber);
+        return channel;
     }
     
     private MidiEvent readNextMidiEvent() throws IOException, MidiFileFormatException
     {
-        int deltaTime = 0;
+        decodeNextEvent();
+        return createMidiEvent();
+    }
+    
+    // Decodes events (starting with the current one, if so specified) until one is accepted by the event filter, and creates a MidiEvent
+    // for it with the delta time since the previous accepted event. Returns null at the track end or past the filter's tick range.
+    private MidiEvent readNextAcceptedMidiEvent(boolean includeCurrentEvent) throws IOException, MidiFileFormatException
+    {
+        long skippedDeltaTime = 0;
+        if (! includeCurrentEvent)
+            decodeNextEvent();
+        while (! eventFilter.isPastTickRange(runningTotalTime))
+        {
+            if (eventFilter.accepts(status,data1,runningTotalTime))
+            {
+                MidiEvent midiEvent = createMidiEvent();
+                midiEvent.setDeltaTime((int) (deltaTime + skippedDeltaTime));
+                return midiEvent;
+            }
+            skippedDeltaTime+=deltaTime;
+            updateChannelInfo();
+            if ((tempoMap!=null) && isTempoChange())
+                tempoMap.addTempoChange(runningTotalTime,getTempo());
+            if (isTrackEnd())
+                break;
+            decodeNextEvent();
+        }
+        return null;
+    }
+    
+    MidiEvent createMidiEvent()
+    {
+        if (recorder!=null)
+            recorder.midiEventAllocationCount++;
+        return createMidiEvent(status,data1,data2,deltaTime,runningTotalTime,status<STATUS_SYSTEM_EXCLUSIVE ? getChannel(status & 0x0F) : null,hasPayload() ? getPayloadView() : null);
+    }
+    
+    static MidiEvent createMidiEvent(int status,int data1,int data2,int deltaTime,long totalTime,Channel channel,ByteBuffer payload)
+    {
+        int command = status>>4;
+        if (command<=10)
+            return new NoteMidiEvent(deltaTime,totalTime,channel,NOTE_EVENT_TYPES[command - 8],data1,data2);
+        else if (command<=14)
+            return new StateChangeMidiEvent(deltaTime,totalTime,status & 0x0F,STATE_CHANGE_TYPES[command - 11],data1,data2);
+        else if (status==STATUS_META)
+            return new MetaMidiEvent(deltaTime,totalTime,data1,getMetaEventType(data1),payload);
+        else
+            return new SystemExclusiveMidiEvent(deltaTime,totalTime,status,payload);
+    }
+    
+    static MetaMidiEvent.MetaEventType getMetaEventType(int metaTypeCode)
+    {
+        switch (metaTypeCode)
+        {
+            case 0 : return MetaMidiEvent.MetaEventType.TRACK_SEQ_NUMBER;
+            case 1 : return MetaMidiEvent.MetaEventType.TEXT;
+            case 2 : return MetaMidiEvent.MetaEventType.COPYRIGHT_INFO;
+            case 3 : return MetaMidiEvent.MetaEventType.TRACK_NAME;
+            case 4 : return MetaMidiEvent.MetaEventType.TRACK_INSTRUMENT_NAME;
+            case 5 : return MetaMidiEvent.MetaEventType.LYRIC;
+            case 6 : return MetaMidiEvent.MetaEventType.MARKER;
+            case 7 : return MetaMidiEvent.MetaEventType.CUE_POINT;
+            case 0x2F : return MetaMidiEvent.MetaEventType.TRACK_END;
+            case 0x51 : return MetaMidiEvent.MetaEventType.SET_TEMPO;
+            case 0x58 : return MetaMidiEvent.MetaEventType.TIME_SIGNATURE;
+            case 0x59 : return MetaMidiEvent.MetaEventType.KEY_SIGNATURE;
+            case 0x7F : return MetaMidiEvent.MetaEventType.SEQUENCER_INFO;
+            default : return MetaMidiEvent.MetaEventType.UNKNOWN;
+        }
+    }
+    
+    void decodeNextEvent() throws IOException, MidiFileFormatException
+    {
+        if ((chaseEvents!=null) && decodeNextChaseEvent())
+            return;
+        deltaTime = 0;
         for (int deltaTimeByteCount=0; ; deltaTimeByteCount++)
         {
-            int nextByte = stream.read();
+            int nextByte = source.read();
             if (nextByte==-1)
                 throw new MidiFileFormatException("Unexpected end of file!");
             if (FileHelpers.byteHasMsbSet(nextByte))
@@ -194,103 +613,107 @@ public class MidiTrackReader implements Iterable<MidiEvent>,Closeable
         }
         runningTotalTime+=deltaTime;
         
-        int nextByte = stream.read();
+        int nextByte = source.read();
+        if (nextByte==-1)
+            throw new MidiFileFormatException("Unexpected end of file");
         if (FileHelpers.byteHasMsbSet(nextByte))
         {
-            int channelNumber = nextByte & 0x0F;
-            int command = nextByte>>4;
-            if (command<=10)
-            {
-                NoteMidiEvent.NoteEventType noteEventType;
-                switch (command)
-                {
-                    case 8 : noteEventType = NoteMidiEvent.NoteEventType.NOTE_OFF; break;
-                    case 9 : noteEventType = NoteMidiEvent.NoteEventType.NOTE_ON; break;
-                    default : noteEventType = NoteMidiEvent.NoteEventType.KEY_AFTER_TOUCH; break;
-                }
-                int noteNumber = stream.read();
-                int velocity = stream.read();
-                return previousVoiceCategoryMidiEvent = new NoteMidiEvent(deltaTime,runningTotalTime,new Channel(trackNumber,channelNumber),noteEventType,noteNumber,velocity);
-            }
-            else if (command<=14)
+            status = nextByte;
+            if (status<STATUS_SYSTEM_EXCLUSIVE)
             {
-                StateChangeMidiEvent.StateChangeType eventType;
-                boolean twoValues = false;
-                switch (command)
-                {
-                    case 11 : {
-                        eventType = StateChangeMidiEvent.StateChangeType.CONTROL_CHANGE;
-                        twoValues = true;
-                        break;
-                    }
-                    case 12 : eventType = StateChangeMidiEvent.StateChangeType.PROGRAM_CHANGE; break;
-                    case 13 : eventType = StateChangeMidiEvent.StateChangeType.CHANNEL_AFTER_TOUCH; break;
-                    default : {
-                        eventType = StateChangeMidiEvent.StateChangeType.PITCH_WHEEL_CHANGE;
-                        twoValues = true;
-                        break;
-                    }
-                }
-                int value1 = stream.read();
-                return previousVoiceCategoryMidiEvent = (twoValues 
-                        ? new StateChangeMidiEvent(deltaTime,runningTotalTime,channelNumber,eventType,value1,stream.read()) 
-                        : new StateChangeMidiEvent(deltaTime,runningTotalTime,channelNumber,eventType,value1));
+                runningStatus = status;
+                data1 = source.read();
+                data2 = hasTwoDataBytes(status) ? source.read() : 0;
             }
-            else if (channelNumber==0)
+            else if (status==STATUS_META)
             {
-                int b;
-                while ((b = stream.read())!=-1)
-                    if (b==0xF7)
-                        break;
-                if (b==-1)
+                data1 = source.read();
+                data2 = 0;
+                if (data1==-1)
                     throw new MidiFileFormatException("Unexpected end of file");
-                previousVoiceCategoryMidiEvent = null;
-                return new SystemExclusiveMidiEvent(deltaTime,runningTotalTime);
+                readPayload((eventFilter==null) || (data1==META_TYPE_SET_TEMPO) || eventFilter.acceptsMetaTypeCode(data1));
             }
-            else
+            else if ((status==STATUS_SYSTEM_EXCLUSIVE) || (status==STATUS_SYSTEM_EXCLUSIVE_ESCAPE))
             {
-                int controlChangeCode = stream.read();
-                MetaMidiEvent.MetaEventType eventType;
-                switch (controlChangeCode)
-                {
-                    case 0 : eventType = MetaMidiEvent.MetaEventType.TRACK_SEQ_NUMBER; break;
-                    case 1 : eventType = MetaMidiEvent.MetaEventType.TEXT; break;
-                    case 2 : eventType = MetaMidiEvent.MetaEventType.COPYRIGHT_INFO; break;
-                    case 3 : eventType = MetaMidiEvent.MetaEventType.TRACK_NAME; break;
-                    case 4 : eventType = MetaMidiEvent.MetaEventType.TRACK_INSTRUMENT_NAME; break;
-                    case 5 : eventType = MetaMidiEvent.MetaEventType.LYRIC; break;
-                    case 6 : eventType = MetaMidiEvent.MetaEventType.MARKER; break;
-                    case 7 : eventType = MetaMidiEvent.MetaEventType.CUE_POINT; break;
-                    case 0x2F : eventType = MetaMidiEvent.MetaEventType.TRACK_END; break;
-                    case 0x51 : eventType = MetaMidiEvent.MetaEventType.SET_TEMPO; break;
-                    case 0x58 : eventType = MetaMidiEvent.MetaEventType.TIME_SIGNATURE; break;
-                    case 0x59 : eventType = MetaMidiEvent.MetaEventType.KEY_SIGNATURE; break;
-                    case 0x7F : eventType = MetaMidiEvent.MetaEventType.SEQUENCER_INFO; break;
-                    default : eventType = MetaMidiEvent.MetaEventType.UNKNOWN; break;
-                }
-                int byteCount = stream.read();
-                byte[] bytes = new byte[byteCount];
-                stream.read(bytes);
-                return new MetaMidiEvent(deltaTime,runningTotalTime,eventType,bytes);
+                runningStatus = 0;
+                data1 = data2 = 0;
+                readPayload((eventFilter==null) || eventFilter.acceptsSystemExclusive());
             }
+            else
+                throw new MidiFileFormatException("Invalid status byte: "+Integer.toHexString(status));
         }
-        else // Probably running-status; consult previous Midi Event.
+        else // Running-status; repeat the status byte of the previous voice-category event.
         {
-            if (previousVoiceCategoryMidiEvent==null)
+            if (runningStatus==0)
                 throw new MidiFileFormatException("Unexpected running-status byte");
-            if (previousVoiceCategoryMidiEvent instanceof NoteMidiEvent)
-            {
-                NoteMidiEvent previousNoteMidiEvent = (NoteMidiEvent) previousVoiceCategoryMidiEvent;
-                return previousVoiceCategoryMidiEvent = new NoteMidiEvent(deltaTime,runningTotalTime,previousNoteMidiEvent.getChannel(),previousNoteMidiEvent.getNoteEventType(),nextByte,stream.read());
-            }
-            else
-            {
-                StateChangeMidiEvent previousStateChangeMidiEvent = (StateChangeMidiEvent) previousVoiceCategoryMidiEvent;
-                boolean twoValues = (previousStateChangeMidiEvent.getStateChangeType()==StateChangeMidiEvent.StateChangeType.CONTROL_CHANGE) || (previousStateChangeMidiEvent.getStateChangeType()==StateChangeMidiEvent.StateChangeType.PITCH_WHEEL_CHANGE);
-                return previousVoiceCategoryMidiEvent = twoValues
-                        ? new StateChangeMidiEvent(deltaTime,runningTotalTime,previousStateChangeMidiEvent.getChannelNumber(),previousStateChangeMidiEvent.getStateChangeType(),nextByte,stream.read())
-                        : new StateChangeMidiEvent(deltaTime,runningTotalTime,previousStateChangeMidiEvent.getChannelNumber(),previousStateChangeMidiEvent.getStateChangeType(),nextByte);
-            }
+            status = runningStatus;
+            data1 = nextByte;
+            data2 = hasTwoDataBytes(status) ? source.read() : 0;
+            if (recorder!=null)
+                recorder.runningStatusCount++;
         }
+        if (recorder!=null)
+            recorder.eventDecoded(status);
+    }
+    
+    private boolean decodeNextChaseEvent()
+    {
+        if (chaseIndex==chaseEvents.length)
+        {
+            chaseEvents = null;
+            runningTotalTime = resumeTotalTime;
+            return false;
+        }
+        int chaseEvent = chaseEvents[chaseIndex++];
+        deltaTime = (int) (chaseTotalTime - runningTotalTime);
+        runningTotalTime = chaseTotalTime;
+        status = chaseEvent>>>16;
+        data1 = (chaseEvent>>8) & 0xFF;
+        data2 = chaseEvent & 0xFF;
+        payloadLength = 0;
+        payloadPosition = -1;
+        return true;
+    }
+    
+    // Reads the length and the payload of a meta or system exclusive event; a payload that is not wanted is skipped and left empty.
+    private void readPayload(boolean wanted) throws IOException, MidiFileFormatException
+    {
+        int length = 0;
+        for (int lengthByteCount=0; ; lengthByteCount++)
+        {
+            int nextByte = source.read();
+            if (nextByte==-1)
+                throw new MidiFileFormatException("Unexpected end of file");
+            length = (length<<7) + (nextByte & 0x7F);
+            if (! FileHelpers.byteHasMsbSet(nextByte))
+                break;
+            if (lengthByteCount==3)
+                throw new MidiFileFormatException("Event length must not exceed 4 bytes");
+        }
+        payloadPosition = -1;
+        if (! wanted)
+        {
+            source.skip(length);
+            payloadLength = 0;
+        }
+        else if (sourceBuffer!=null)
+        {
+            payloadPosition = sourceBuffer.position();
+            payloadLength = length;
+            source.skip(length);
+        }
+        else
+        {
+            payloadLength = length;
+            if (payloadLength>payload.length)
+                payload = new byte[Math.max(payloadLength,payload.length*2)];
+            source.readFully(payload,0,payloadLength);
+        }
+    }
+    
+    static boolean hasTwoDataBytes(int status)
+    {
+        int command = status>>4;
+        return (command!=12) && (command!=13);
     }
 }
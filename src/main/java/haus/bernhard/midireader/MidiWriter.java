@@ -0,0 +1,455 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package haus.bernhard.midireader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+import haus.bernhard.midireader.midievent.MetaMidiEvent;
+import haus.bernhard.midireader.midievent.MidiEvent;
+import haus.bernhard.midireader.midievent.NoteMidiEvent;
+import haus.bernhard.midireader.midievent.StateChangeMidiEvent;
+import haus.bernhard.midireader.midievent.SystemExclusiveMidiEvent;
+import haus.bernhard.midireader.util.FileHelpers;
+
+// Writes a Standard MIDI File to a channel, one track after the other, through a reusable buffer. Channel events repeat the status byte
+// only when it changes (running status), delta times and lengths use the fewest bytes possible, and each track chunk's length is
+// patched into its header when the track ends: in the buffer if the header has not been flushed yet, or else in the channel, which
+// must then be seekable. On other channels a track is kept in the buffer until it ends, and the number of tracks must be declared up
+// front; the buffer grows up to MidiReader.DEFAULT_MAX_HEAP_BUFFER_BYTES, beyond which the track is written to a temporary file
+// (deleted on close) and copied to the channel when it ends.
+//
+// Events are given their absolute tick and must be written in chronological order per track. TRACK_END events are not copied; each
+// track ends with one at the last event or the latest TRACK_END written to it, so that the tracks of a merged reader can be written
+// as a single track.
+public class MidiWriter implements Closeable
+{
+    public static final int DEFAULT_BUFFER_SIZE = 1<<16;
+    
+    private static final byte[] MIDI_HEADER = new byte[] { 0x4D, 0x54, 0x68, 0x64, 0x00, 0x00, 0x00, 0x06 };
+    private static final byte[] TRACK_START = new byte[] { 0x4D, 0x54, 0x72, 0x6B };
+    private static final int TRACK_COUNT_OFFSET = 10;
+    private static final long MAX_VARIABLE_LENGTH_QUANTITY = 0x0FFFFFFF;
+    
+    private WritableByteChannel channel;
+    private SeekableByteChannel seekableChannel;
+    private long channelStartPosition;
+    private FileChannel spillChannel = null;
+    private boolean spilling = false;
+    // The file offset of the first byte in the spill file.
+    private long spillStartOffset;
+    private ByteBuffer buffer;
+    // The number of bytes of the file that have been written to the channel, i.e. the file offset of the buffer's first byte.
+    private long flushedByteCount = 0;
+    private MidiFileFormat fileFormat;
+    private int declaredTrackCount,trackCount = 0;
+    private boolean inTrack = false,closed = false;
+    private long trackLengthOffset,lastTick,trackEndTick;
+    private int runningStatus;
+    private byte[] payload = new byte[64];
+    
+    // Creates (or truncates) the file; the number of tracks is patched into its header on close().
+    public MidiWriter(String fileName,MidiFileFormat fileFormat,int ticksPerQuarterNote) throws IOException
+    {
+        this(openFile(fileName,fileFormat,ticksPerQuarterNote),fileFormat,-1,ticksPerQuarterNote);
+    }
+    
+    // A numberOfTracks of -1 leaves the number open until close(), which requires a seekable channel.
+    public MidiWriter(WritableByteChannel channel,MidiFileFormat fileFormat,int numberOfTracks,int ticksPerQuarterNote) throws IOException
+    {
+        checkArguments(fileFormat,numberOfTracks,ticksPerQuarterNote);
+        if (channel instanceof SeekableByteChannel)
+        {
+            seekableChannel = (SeekableByteChannel) channel;
+            channelStartPosition = seekableChannel.position();
+        }
+        else if (numberOfTracks<0)
+            throw new IllegalArgumentException("The number of tracks must be declared when writing to a channel that is not seekable");
+        this.channel = channel;
+        this.fileFormat = fileFormat;
+        declaredTrackCount = numberOfTracks;
+        buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        buffer.put(MIDI_HEADER);
+        buffer.putShort((short) fileFormat.ordinal());
+        buffer.putShort((short) Math.max(numberOfTracks,0));
+        buffer.putShort((short) ticksPerQuarterNote);
+    }
+    
+    // Starts the next track, ending the current one if necessary.
+    public void startTrack() throws IOException
+    {
+        if (inTrack)
+            endTrack();
+        if ((fileFormat==MidiFileFormat.SingleTrack) && (trackCount==1))
+            throw new IllegalStateException("A single-track file cannot have more than one track!");
+        if (trackCount==(declaredTrackCount<0 ? 0xFFFF : declaredTrackCount))
+            throw new IllegalStateException("All "+trackCount+" tracks have been written already!");
+        ensureCapacity(8);
+        buffer.put(TRACK_START);
+        trackLengthOffset = flushedByteCount + buffer.position();
+        buffer.putInt(0);
+        inTrack = true;
+        lastTick = trackEndTick = 0;
+        runningStatus = 0;
+        trackCount++;
+    }
+    
+    public void endTrack() throws IOException
+    {
+        checkInTrack();
+        writeDeltaTime(Math.max(trackEndTick,lastTick));
+        ensureCapacity(3);
+        buffer.put((byte) MidiTrackReader.STATUS_META).put((byte) MidiTrackReader.META_TYPE_TRACK_END).put((byte) 0);
+        patch(trackLengthOffset,flushedByteCount + buffer.position() - trackLengthOffset - 4,4);
+        inTrack = false;
+        if (spilling)
+            copySpilledTrack();
+    }
+    
+    // Writes a note, control change, program change, after-touch or pitch wheel message.
+    public void writeChannelEvent(long tick,int status,int data1,int data2) throws IOException
+    {
+        if ((status<0x80) || (status>=MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE))
+            throw new IllegalArgumentException("Not a channel message status: "+status);
+        checkInTrack();
+        writeDeltaTime(tick);
+        ensureCapacity(3);
+        if (status!=runningStatus)
+        {
+            buffer.put((byte) status);
+            runningStatus = status;
+        }
+        buffer.put((byte) data1);
+        int command = status>>4;
+        if ((command!=12) && (command!=13))
+            buffer.put((byte) data2);
+    }
+    
+    public void writeMetaEvent(long tick,int metaTypeCode,byte[] data,int offset,int length) throws IOException
+    {
+        writeMetaEvent(tick,metaTypeCode,ByteBuffer.wrap(data,offset,length));
+    }
+    
+    // Writes a system exclusive message (status 0xF0) or an escape sequence (0xF7); the data is everything after the length, including
+    // the terminating 0xF7 of a complete system exclusive message.
+    public void writeSystemExclusiveEvent(long tick,int status,byte[] data,int offset,int length) throws IOException
+    {
+        writeSystemExclusiveEvent(tick,status,ByteBuffer.wrap(data,offset,length));
+    }
+    
+    // Writes an event of a MidiReader's iterator or events. Meta events that were created from an UNKNOWN MetaEventType only are left out.
+    public void write(MidiEvent midiEvent) throws IOException
+    {
+        if (midiEvent instanceof NoteMidiEvent)
+        {
+            NoteMidiEvent noteMidiEvent = (NoteMidiEvent) midiEvent;
+            int status = (0x80 + (noteMidiEvent.getNoteEventType().ordinal()<<4)) | noteMidiEvent.getChannel().getChannelNumber();
+            writeChannelEvent(midiEvent.getTotalTime(),status,noteMidiEvent.getNoteNumber(),noteMidiEvent.getVelocity());
+        }
+        else if (midiEvent instanceof StateChangeMidiEvent)
+        {
+            StateChangeMidiEvent stateChangeMidiEvent = (StateChangeMidiEvent) midiEvent;
+            int status = ((11 + stateChangeMidiEvent.getStateChangeType().ordinal())<<4) | stateChangeMidiEvent.getChannelNumber();
+            writeChannelEvent(midiEvent.getTotalTime(),status,stateChangeMidiEvent.getValue1(),stateChangeMidiEvent.getValue2());
+        }
+        else if (midiEvent instanceof MetaMidiEvent)
+        {
+            MetaMidiEvent metaMidiEvent = (MetaMidiEvent) midiEvent;
+            int metaTypeCode = metaMidiEvent.getMetaTypeCode()>=0 ? metaMidiEvent.getMetaTypeCode() : getMetaTypeCode(metaMidiEvent.getMetaEventType());
+            ByteBuffer content = metaMidiEvent.getPayload();
+            if (metaTypeCode>=0)
+                writeMetaEvent(midiEvent.getTotalTime(),metaTypeCode,content==null ? ByteBuffer.allocate(0) : content);
+        }
+        else if (midiEvent instanceof SystemExclusiveMidiEvent)
+        {
+            SystemExclusiveMidiEvent systemExclusiveMidiEvent = (SystemExclusiveMidiEvent) midiEvent;
+            writeSystemExclusiveEvent(midiEvent.getTotalTime(),systemExclusiveMidiEvent.getStatus(),systemExclusiveMidiEvent.getPayload());
+        }
+    }
+    
+    // Writes the cursor's current event.
+    public void write(MidiEventCursor cursor) throws IOException
+    {
+        if (cursor.status()<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+        {
+            writeChannelEvent(cursor.tick(),cursor.status(),cursor.data1(),cursor.data2());
+            return;
+        }
+        if (cursor.payloadLength()>payload.length)
+            payload = new byte[Math.max(cursor.payloadLength(),payload.length*2)];
+        int length = cursor.copyPayload(payload,0);
+        if (cursor.type()==MidiEventCursor.EventType.META)
+            writeMetaEvent(cursor.tick(),cursor.data1(),payload,0,length);
+        else
+            writeSystemExclusiveEvent(cursor.tick(),cursor.status(),payload,0,length);
+    }
+    
+    // Copies all events of each track of the reader (including those before the first note) as a track of its own, decoding each
+    // track chunk once. The reader's event filter and position do not apply.
+    public void writeTracks(MidiReader reader) throws IOException, MidiFileFormatException
+    {
+        reader.getMidiFileInfo();
+        ByteBuffer[] trackChunks = reader.getTrackChunks();
+        if (trackChunks==null)
+            throw new IllegalStateException("Copying tracks is not supported for a single-track file read from a stream!");
+        for (int trackNumber=0; trackNumber<trackChunks.length; trackNumber++)
+        {
+            MidiTrackReader scanner = new MidiTrackReader(new ByteBufferSource(trackChunks[trackNumber].duplicate()),trackNumber);
+            scanner.readTrackHeader();
+            startTrack();
+            while (true)
+            {
+                scanner.decodeNextEvent();
+                long tick = scanner.getRunningTotalTime();
+                if (scanner.status<MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+                    writeChannelEvent(tick,scanner.status,scanner.data1,scanner.data2);
+                else if (scanner.isMetaEvent())
+                    writeMetaEvent(tick,scanner.data1,scanner.getPayload(),0,scanner.payloadLength);
+                else
+                    writeSystemExclusiveEvent(tick,scanner.status,scanner.getPayload(),0,scanner.payloadLength);
+                if (scanner.isTrackEnd())
+                    break;
+            }
+            endTrack();
+        }
+    }
+    
+    // Ends the current track, patches the number of tracks into the header if it was left open, flushes the buffer and closes the channel.
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+        try
+        {
+            if (inTrack)
+                endTrack();
+            if (declaredTrackCount<0)
+                patch(TRACK_COUNT_OFFSET,trackCount,2);
+            else if (trackCount!=declaredTrackCount)
+                throw new IllegalStateException(declaredTrackCount+" tracks were declared, but "+trackCount+" were written!");
+            flush();
+        }
+        finally
+        {
+            if (spillChannel!=null)
+                spillChannel.close();
+            channel.close();
+        }
+    }
+    
+    private void writeMetaEvent(long tick,int metaTypeCode,ByteBuffer data) throws IOException
+    {
+        checkInTrack();
+        if (metaTypeCode==MidiTrackReader.META_TYPE_TRACK_END)
+        {
+            trackEndTick = Math.max(trackEndTick,tick);
+            return;
+        }
+        writeDeltaTime(tick);
+        ensureCapacity(6);
+        buffer.put((byte) MidiTrackReader.STATUS_META).put((byte) metaTypeCode);
+        writeVariableLengthQuantity(data.remaining());
+        writeBytes(data);
+        runningStatus = 0; // Meta events cancel running status.
+    }
+    
+    private void writeSystemExclusiveEvent(long tick,int status,ByteBuffer data) throws IOException
+    {
+        if ((status!=MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE) && (status!=MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE_ESCAPE))
+            throw new IllegalArgumentException("Not a system exclusive status: "+status);
+        checkInTrack();
+        writeDeltaTime(tick);
+        ensureCapacity(5);
+        buffer.put((byte) status);
+        writeVariableLengthQuantity(data.remaining());
+        writeBytes(data);
+        runningStatus = 0;
+    }
+    
+    // Validated before the String constructor opens (and truncates) the file.
+    private static void checkArguments(MidiFileFormat fileFormat,int numberOfTracks,int ticksPerQuarterNote)
+    {
+        if ((ticksPerQuarterNote<=0) || (ticksPerQuarterNote>0x7FFF))
+            throw new IllegalArgumentException("Ticks per quarter note must be between 1 and 32767: "+ticksPerQuarterNote);
+        if ((numberOfTracks<-1) || (numberOfTracks>0xFFFF) || ((fileFormat==MidiFileFormat.SingleTrack) && (numberOfTracks>1)))
+            throw new IllegalArgumentException("Invalid number of tracks for a "+fileFormat+" file: "+numberOfTracks);
+    }
+    
+    private static FileChannel openFile(String fileName,MidiFileFormat fileFormat,int ticksPerQuarterNote) throws IOException
+    {
+        checkArguments(fileFormat,-1,ticksPerQuarterNote);
+        return FileChannel.open(Paths.get(fileName),StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE);
+    }
+    
+    private void checkInTrack()
+    {
+        if (! inTrack)
+            throw new IllegalStateException("No track has been started!");
+    }
+    
+    private void writeDeltaTime(long tick) throws IOException
+    {
+        if (tick<lastTick)
+            throw new IllegalArgumentException("Events must be written in chronological order: tick "+tick+" follows tick "+lastTick);
+        long deltaTime = tick - lastTick;
+        if (deltaTime>MAX_VARIABLE_LENGTH_QUANTITY)
+            throw new IllegalArgumentException("Delta-time "+deltaTime+" does not fit into 4 bytes");
+        lastTick = tick;
+        ensureCapacity(4);
+        writeVariableLengthQuantity(deltaTime);
+    }
+    
+    private void writeVariableLengthQuantity(long value)
+    {
+        if (value>MAX_VARIABLE_LENGTH_QUANTITY)
+            throw new IllegalArgumentException("Length "+value+" does not fit into 4 bytes");
+        int shift = 21;
+        while ((shift>0) && ((value>>shift)==0))
+            shift-=7;
+        for (; shift>0; shift-=7)
+            buffer.put((byte) (FileHelpers.MSB_MASK | ((value>>shift) & 0x7F)));
+        buffer.put((byte) (value & 0x7F));
+    }
+    
+    private void writeBytes(ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            ensureCapacity(1);
+            int count = Math.min(bytes.remaining(),buffer.remaining());
+            buffer.put(bytes.slice(bytes.position(),count));
+            bytes.position(bytes.position() + count);
+        }
+    }
+    
+    // Makes room for the given number of bytes, by flushing the buffer unless a length that is still to be patched must stay in it.
+    private void ensureCapacity(int byteCount) throws IOException
+    {
+        if (buffer.remaining()>=byteCount)
+            return;
+        if ((seekableChannel!=null) || (! inTrack) || spilling)
+            flush();
+        else if (buffer.position() + byteCount>MidiReader.DEFAULT_MAX_HEAP_BUFFER_BYTES)
+            startSpilling();
+        if (buffer.remaining()<byteCount)
+        {
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity()*2,buffer.position() + byteCount));
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        }
+    }
+    
+    private void flush() throws IOException
+    {
+        WritableByteChannel target = spilling ? spillChannel : channel;
+        buffer.flip();
+        while (buffer.hasRemaining())
+            flushedByteCount+=target.write(buffer);
+        buffer.clear();
+    }
+    
+    // Writes what precedes the current track to the channel, and the track so far to the spill file, which the rest of the track is
+    // flushed to as well.
+    private void startSpilling() throws IOException
+    {
+        if (spillChannel==null)
+            spillChannel = FileChannel.open(Files.createTempFile("midiwriter",".mid"),StandardOpenOption.READ,StandardOpenOption.WRITE,StandardOpenOption.DELETE_ON_CLOSE);
+        spillChannel.truncate(0);
+        spillStartOffset = trackLengthOffset - TRACK_START.length;
+        int position = buffer.position();
+        buffer.flip();
+        buffer.limit((int) (spillStartOffset - flushedByteCount));
+        while (buffer.hasRemaining())
+            flushedByteCount+=channel.write(buffer);
+        buffer.limit(position);
+        buffer.compact();
+        spilling = true;
+        flush();
+    }
+    
+    // Copies the ended track, whose length has been patched into the spill file, to the channel.
+    private void copySpilledTrack() throws IOException
+    {
+        flush();
+        spilling = false;
+        long length = flushedByteCount - spillStartOffset;
+        for (long copied=0; copied<length; )
+            copied+=spillChannel.transferTo(copied,length - copied,channel);
+    }
+    
+    // Writes a big-endian value at the given file offset.
+    private void patch(long offset,long value,int byteCount) throws IOException
+    {
+        if (offset>=flushedByteCount)
+        {
+            int index = (int) (offset - flushedByteCount);
+            for (int i=byteCount - 1; i>=0; i--, value>>=8)
+                buffer.put(index + i,(byte) value);
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(byteCount);
+        for (int i=byteCount - 1; i>=0; i--, value>>=8)
+            bytes.put(i,(byte) value);
+        if (spilling)
+        {
+            while (bytes.hasRemaining())
+                spillChannel.write(bytes,offset - spillStartOffset + bytes.position());
+            return;
+        }
+        long position = seekableChannel.position();
+        seekableChannel.position(channelStartPosition + offset);
+        while (bytes.hasRemaining())
+            seekableChannel.write(bytes);
+        seekableChannel.position(position);
+    }
+    
+    private static int getMetaTypeCode(MetaMidiEvent.MetaEventType metaEventType)
+    {
+        switch (metaEventType)
+        {
+            case TRACK_SEQ_NUMBER : return 0;
+            case TEXT : return 1;
+            case COPYRIGHT_INFO : return 2;
+            case TRACK_NAME : return MidiTrackReader.META_TYPE_TRACK_NAME;
+            case TRACK_INSTRUMENT_NAME : return 4;
+            case LYRIC : return 5;
+            case MARKER : return 6;
+            case CUE_POINT : return 7;
+            case TRACK_END : return MidiTrackReader.META_TYPE_TRACK_END;
+            case SET_TEMPO : return MidiTrackReader.META_TYPE_SET_TEMPO;
+            case TIME_SIGNATURE : return MidiTrackReader.META_TYPE_TIME_SIGNATURE;
+            case KEY_SIGNATURE : return 0x59;
+            case SEQUENCER_INFO : return 0x7F;
+            default : return -1;
+        }
+    }
+}
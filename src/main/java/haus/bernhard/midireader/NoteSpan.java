@@ -0,0 +1,109 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import haus.bernhard.midireader.midievent.NoteMidiEvent;
+
+// A sounding note: a NOTE_ON paired with the NOTE_OFF (or NOTE_ON with velocity 0) that ends it.
+public class NoteSpan
+{
+    private int trackNumber,channelNumber,noteNumber,velocity,releaseVelocity;
+    private long startTick,endTick,startMicroseconds,endMicroseconds;
+    
+    public NoteSpan(int trackNumber,int channelNumber,int noteNumber,int velocity,int releaseVelocity,long startTick,long endTick,long startMicroseconds,long endMicroseconds)
+    {
+        this.trackNumber = trackNumber;
+        this.channelNumber = channelNumber;
+        this.noteNumber = noteNumber;
+        this.velocity = velocity;
+        this.releaseVelocity = releaseVelocity;
+        this.startTick = startTick;
+        this.endTick = endTick;
+        this.startMicroseconds = startMicroseconds;
+        this.endMicroseconds = endMicroseconds;
+    }
+    
+    public int getTrackNumber()
+    {
+        return trackNumber;
+    }
+    
+    public int getChannelNumber()
+    {
+        return channelNumber;
+    }
+    
+    public int getNoteNumber()
+    {
+        return noteNumber;
+    }
+    
+    public double getNoteFrequency()
+    {
+        return NoteMidiEvent.getNoteFrequency(noteNumber);
+    }
+    
+    public int getVelocity()
+    {
+        return velocity;
+    }
+    
+    // The velocity of the NOTE_OFF event, or 0 if the note was ended otherwise.
+    public int getReleaseVelocity()
+    {
+        return releaseVelocity;
+    }
+    
+    public long getStartTick()
+    {
+        return startTick;
+    }
+    
+    public long getEndTick()
+    {
+        return endTick;
+    }
+    
+    public long getDurationTicks()
+    {
+        return endTick - startTick;
+    }
+    
+    public long getStartMicroseconds()
+    {
+        return startMicroseconds;
+    }
+    
+    public long getEndMicroseconds()
+    {
+        return endMicroseconds;
+    }
+    
+    public long getDurationMicroseconds()
+    {
+        return endMicroseconds - startMicroseconds;
+    }
+    
+    public String toString()
+    {
+        return getClass().getName()+"[trackNumber="+trackNumber+";channelNumber="+channelNumber+";noteNumber="+noteNumber+";velocity="+velocity+";startTick="+startTick+";durationTicks="+getDurationTicks()+";startMicroseconds="+startMicroseconds+";durationMicroseconds="+getDurationMicroseconds()+']';
+    }
+}
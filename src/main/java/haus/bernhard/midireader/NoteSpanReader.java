@@ -0,0 +1,288 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import haus.bernhard.midireader.midievent.StateChangeMidiEvent;
+
+// Pairs the NOTE_ON and NOTE_OFF events (NOTE_ON with velocity 0 counting as NOTE_OFF) of a MidiReader into NoteSpans while
+// reading, keeping only the notes that are currently sounding. Each track has a table of 16 channels by 128 note numbers, whose
+// slots hold the sounding notes of that key in the order they were started; a NOTE_OFF ends the oldest one. Spans are returned
+// in the order in which they end. Notes still sounding at their track's end are ended there, or at the last event read if the
+// reader's event filter drops the TRACK_END events.
+//
+// With the sustain pedal enabled, a NOTE_OFF while the channel's damper pedal (controller 64) is down only releases the note, which
+// then ends when the pedal is lifted or when the same key is struck again.
+public class NoteSpanReader implements Iterable<NoteSpan>
+{
+    private static final int SLOTS_PER_TRACK = 16*128;
+    
+    private MidiReader reader;
+    private boolean sustainPedal = false;
+    
+    public NoteSpanReader(MidiReader reader)
+    {
+        this.reader = reader;
+    }
+    
+    public boolean isSustainPedal()
+    {
+        return sustainPedal;
+    }
+    
+    public void setSustainPedal(boolean newSustainPedal)
+    {
+        sustainPedal = newSustainPedal;
+    }
+    
+    public Iterator<NoteSpan> iterator()
+    {
+        try
+        {
+            return new NoteSpanIterator(reader.cursor());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        catch (MidiFileFormatException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    public Stream<NoteSpan> spans()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),Spliterator.ORDERED | Spliterator.NONNULL),false);
+    }
+    
+    
+    private class NoteSpanIterator implements Iterator<NoteSpan>
+    {
+        private MidiEventCursor cursor;
+        private ArrayDeque<NoteSpan> endedSpans = new ArrayDeque<NoteSpan>();
+        private boolean cursorExhausted = false;
+        // Per track, created on its first note: the first and last sounding note of each slot (-1 if none), and a bit per channel whose pedal is down.
+        private int[][] slotHeads,slotTails;
+        private int[] pedalDownChannels;
+        // Pool of sounding notes, linked per slot; unused notes are linked from freeNote.
+        private long[] noteStartTicks = new long[64],noteStartMicroseconds = new long[64];
+        private int[] noteVelocities = new int[64],noteNext = new int[64];
+        // The release velocity of a released note, or -1 while its key is held.
+        private int[] noteReleaseVelocities = new int[64];
+        private int freeNote = -1,usedNoteCount = 0;
+        // The time of the last event read, at which the notes it ends end.
+        private long lastTick = 0,lastMicroseconds = 0;
+        
+        public NoteSpanIterator(MidiEventCursor cursor) throws IOException, MidiFileFormatException
+        {
+            this.cursor = cursor;
+            int trackCount = reader.getMidiFileInfo().getNumberOfTracks();
+            slotHeads = new int[trackCount][];
+            slotTails = new int[trackCount][];
+            pedalDownChannels = new int[trackCount];
+            // The cursor starts after each track's leading events (or at the tick skipped to), so the pedals pressed before come from the track readers.
+            if (sustainPedal)
+            {
+                MidiTrackReader[] trackReaders = reader.getTrackReaders();
+                for (int trackNumber=0; trackNumber<trackCount; trackNumber++)
+                    pedalDownChannels[trackNumber] = trackReaders[trackNumber].getSustainPedalChannels();
+            }
+        }
+        
+        public boolean hasNext()
+        {
+            try
+            {
+                while (endedSpans.isEmpty() && (! cursorExhausted))
+                {
+                    if (cursor.advance())
+                        processEvent();
+                    else
+                    {
+                        cursorExhausted = true;
+                        for (int trackNumber=0; trackNumber<slotHeads.length; trackNumber++)
+                            endAllNotes(trackNumber);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            catch (MidiFileFormatException e)
+            {
+                throw new RuntimeException(e);
+            }
+            return ! endedSpans.isEmpty();
+        }
+        
+        public NoteSpan next()
+        {
+            if (! hasNext())
+                throw new NoSuchElementException();
+            return endedSpans.poll();
+        }
+        
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        private void processEvent()
+        {
+            int trackNumber = cursor.trackNumber(),command = cursor.status()>>4;
+            lastTick = cursor.tick();
+            lastMicroseconds = cursor.micros();
+            if ((command==9) && (cursor.data2()>0))
+                startNote(trackNumber,cursor.channelNumber(),cursor.data1(),cursor.data2());
+            else if ((command==8) || (command==9))
+                releaseNote(trackNumber,cursor.channelNumber(),cursor.data1(),command==8 ? cursor.data2() : 0);
+            else if ((command==11) && (cursor.data1()==StateChangeMidiEvent.CONTROL_CHANGE_DAMPER_PEDAL) && sustainPedal)
+            {
+                int channelBit = 1<<cursor.channelNumber();
+                if (cursor.data2()>=64)
+                    pedalDownChannels[trackNumber]|=channelBit;
+                else if ((pedalDownChannels[trackNumber] & channelBit)!=0)
+                {
+                    pedalDownChannels[trackNumber]&=~channelBit;
+                    if (slotHeads[trackNumber]!=null)
+                    {
+                        int firstSlot = cursor.channelNumber()*128;
+                        for (int slot=firstSlot; slot<firstSlot + 128; slot++)
+                            endNotes(trackNumber,slot,true);
+                    }
+                }
+            }
+            else if ((cursor.type()==MidiEventCursor.EventType.META) && (cursor.data1()==MidiTrackReader.META_TYPE_TRACK_END))
+                endAllNotes(trackNumber);
+        }
+        
+        private void startNote(int trackNumber,int channelNumber,int noteNumber,int velocity)
+        {
+            if (slotHeads[trackNumber]==null)
+            {
+                slotHeads[trackNumber] = new int[SLOTS_PER_TRACK];
+                slotTails[trackNumber] = new int[SLOTS_PER_TRACK];
+                Arrays.fill(slotHeads[trackNumber],-1);
+                Arrays.fill(slotTails[trackNumber],-1);
+            }
+            int slot = channelNumber*128 + noteNumber;
+            if (sustainPedal)
+                endNotes(trackNumber,slot,true);
+            int note = allocateNote();
+            noteStartTicks[note] = cursor.tick();
+            noteStartMicroseconds[note] = cursor.micros();
+            noteVelocities[note] = velocity;
+            noteReleaseVelocities[note] = -1;
+            noteNext[note] = -1;
+            int[] tails = slotTails[trackNumber];
+            if (tails[slot]==-1)
+                slotHeads[trackNumber][slot] = note;
+            else
+                noteNext[tails[slot]] = note;
+            tails[slot] = note;
+        }
+        
+        // Ends the oldest held note of the key, or only releases it while the channel's pedal is down.
+        private void releaseNote(int trackNumber,int channelNumber,int noteNumber,int releaseVelocity)
+        {
+            if (slotHeads[trackNumber]==null)
+                return;
+            int slot = channelNumber*128 + noteNumber;
+            int previousNote = -1,note = slotHeads[trackNumber][slot];
+            while ((note!=-1) && (noteReleaseVelocities[note]!=-1))
+            {
+                previousNote = note;
+                note = noteNext[note];
+            }
+            if (note==-1)
+                return; // A NOTE_OFF without a matching NOTE_ON.
+            noteReleaseVelocities[note] = releaseVelocity;
+            if ((pedalDownChannels[trackNumber] & (1<<channelNumber))==0)
+                endNote(trackNumber,slot,previousNote,note);
+        }
+        
+        private void endAllNotes(int trackNumber)
+        {
+            if (slotHeads[trackNumber]!=null)
+                for (int slot=0; slot<SLOTS_PER_TRACK; slot++)
+                    endNotes(trackNumber,slot,false);
+        }
+        
+        // Ends the released notes of the slot, or all of its notes.
+        private void endNotes(int trackNumber,int slot,boolean releasedOnly)
+        {
+            int previousNote = -1,note = slotHeads[trackNumber][slot];
+            while (note!=-1)
+            {
+                int nextNote = noteNext[note];
+                if (releasedOnly && (noteReleaseVelocities[note]==-1))
+                    previousNote = note;
+                else
+                    endNote(trackNumber,slot,previousNote,note);
+                note = nextNote;
+            }
+        }
+        
+        private void endNote(int trackNumber,int slot,int previousNote,int note)
+        {
+            endedSpans.add(new NoteSpan(trackNumber,slot>>7,slot & 0x7F,noteVelocities[note],Math.max(0,noteReleaseVelocities[note]),noteStartTicks[note],lastTick,noteStartMicroseconds[note],lastMicroseconds));
+            if (previousNote==-1)
+                slotHeads[trackNumber][slot] = noteNext[note];
+            else
+                noteNext[previousNote] = noteNext[note];
+            if (slotTails[trackNumber][slot]==note)
+                slotTails[trackNumber][slot] = previousNote;
+            noteNext[note] = freeNote;
+            freeNote = note;
+        }
+        
+        private int allocateNote()
+        {
+            if (freeNote!=-1)
+            {
+                int note = freeNote;
+                freeNote = noteNext[note];
+                return note;
+            }
+            if (usedNoteCount==noteVelocities.length)
+            {
+                int newLength = usedNoteCount*2;
+                noteStartTicks = Arrays.copyOf(noteStartTicks,newLength);
+                noteStartMicroseconds = Arrays.copyOf(noteStartMicroseconds,newLength);
+                noteVelocities = Arrays.copyOf(noteVelocities,newLength);
+                noteNext = Arrays.copyOf(noteNext,newLength);
+                noteReleaseVelocities = Arrays.copyOf(noteReleaseVelocities,newLength);
+            }
+            return usedNoteCount++;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// A whole file's events in merged order, held in parallel primitive arrays: the tick, the status and data bytes packed into
+// an int, and the track number of each event, with the payloads of meta and system exclusive events in one shared byte arena. MidiEvent objects
+// are created only when an event is requested as one.
+public final class PackedMidiSequence implements Iterable<MidiEvent>
+{
+    private MidiFileInfo midiFileInfo;
+    private TempoMap tempoMap;
+    private long startTick;
+    private int eventCount;
+    private long[] ticks;
+    private int[] packedStatusData;
+    private short[] trackNumbers;
+    // Event index of each meta or system exclusive event, and the start of its payload in the arena (with the arena length as the final entry).
+    private int[] payloadEventIndices,payloadOffsets;
+    private byte[] payloadArena;
+    private Channel[][] channels;
+    
+    private PackedMidiSequence(MidiFileInfo midiFileInfo)
+    {
+        this.midiFileInfo = midiFileInfo;
+        channels = new Channel[midiFileInfo.getNumberOfTracks()][16];
+    }
+    
+    // Reads the events of the reader (that its event filter selects) from its current position.
+    public static PackedMidiSequence load(MidiReader reader) throws IOException, MidiFileFormatException
+    {
+        PackedMidiSequence sequence = new PackedMidiSequence(reader.getMidiFileInfo());
+        sequence.startTick = reader.getStartTick();
+        int eventCount = 0,payloadEventCount = 0,payloadArenaLength = 0;
+        long[] ticks = new long[1024];
+        int[] packedStatusData = new int[1024],payloadEventIndices = new int[64],payloadOffsets = new int[65];
+        short[] trackNumbers = new short[1024];
+        byte[] payloadArena = new byte[1024];
+        
+        MidiEventCursor cursor = reader.cursor();
+        while (cursor.advance())
+        {
+            if (eventCount==ticks.length)
+            {
+                ticks = Arrays.copyOf(ticks,eventCount*2);
+                packedStatusData = Arrays.copyOf(packedStatusData,eventCount*2);
+                trackNumbers = Arrays.copyOf(trackNumbers,eventCount*2);
+            }
+            ticks[eventCount] = cursor.tick();
+            packedStatusData[eventCount] = (cursor.status()<<16) | (cursor.data1()<<8) | (cursor.data2() & 0xFF);
+            trackNumbers[eventCount] = (short) cursor.trackNumber();
+            if (cursor.status()>=MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+            {
+                if (payloadEventCount==payloadEventIndices.length)
+                {
+                    payloadEventIndices = Arrays.copyOf(payloadEventIndices,payloadEventCount*2);
+                    payloadOffsets = Arrays.copyOf(payloadOffsets,payloadEventCount*2 + 1);
+                }
+                if (payloadArenaLength + cursor.payloadLength()>payloadArena.length)
+                    payloadArena = Arrays.copyOf(payloadArena,Math.max(payloadArena.length*2,payloadArenaLength + cursor.payloadLength()));
+                payloadEventIndices[payloadEventCount] = eventCount;
+                payloadOffsets[payloadEventCount++] = payloadArenaLength;
+                payloadArenaLength+=cursor.copyPayload(payloadArena,payloadArenaLength);
+            }
+            eventCount++;
+        }
+        payloadOffsets[payloadEventCount] = payloadArenaLength;
+        
+        // A reader without a complete tempo map has collected all tempo changes up to here while the cursor decoded the events,
+        // including those of filtered-out events.
+        sequence.tempoMap = reader.getStampingTempoMap();
+        sequence.eventCount = eventCount;
+        sequence.ticks = Arrays.copyOf(ticks,eventCount);
+        sequence.packedStatusData = Arrays.copyOf(packedStatusData,eventCount);
+        sequence.trackNumbers = Arrays.copyOf(trackNumbers,eventCount);
+        sequence.payloadEventIndices = Arrays.copyOf(payloadEventIndices,payloadEventCount);
+        sequence.payloadOffsets = Arrays.copyOf(payloadOffsets,payloadEventCount + 1);
+        sequence.payloadArena = Arrays.copyOf(payloadArena,payloadArenaLength);
+        return sequence;
+    }
+    
+    // Like load(MidiReader), but decodes each track into its own packed buffers in a separate task on the given executor, and
+    // then merges the buffers. The reader must not be iterated concurrently.
+    public static PackedMidiSequence load(MidiReader reader,Executor executor) throws IOException, MidiFileFormatException
+    {
+        MidiTrackReader[] trackReaders = reader.getTrackReaders();
+        // Only single-track files read from a stream have no complete tempo map; the one track's task adds the tempo changes to the reader's.
+        TempoMap incompleteTempoMap = reader.getTrackChunks()==null ? reader.getStampingTempoMap() : null;
+        ArrayList<FutureTask<TrackBuffer>> tasks = new ArrayList<FutureTask<TrackBuffer>>(trackReaders.length);
+        for (MidiTrackReader trackReader : trackReaders)
+        {
+            FutureTask<TrackBuffer> task = new FutureTask<TrackBuffer>(() -> new TrackBuffer(trackReader,incompleteTempoMap));
+            tasks.add(task);
+            executor.execute(task);
+        }
+        TrackBuffer[] trackBuffers = new TrackBuffer[trackReaders.length];
+        try
+        {
+            for (int trackNumber=0; trackNumber<trackBuffers.length; trackNumber++)
+                trackBuffers[trackNumber] = tasks.get(trackNumber).get();
+        }
+        catch (InterruptedException e)
+        {
+            for (FutureTask<TrackBuffer> task : tasks)
+                task.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding tracks");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof MidiFileFormatException)
+                throw (MidiFileFormatException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
+        
+        PackedMidiSequence sequence = new PackedMidiSequence(reader.getMidiFileInfo());
+        sequence.startTick = reader.getStartTick();
+        sequence.tempoMap = reader.getStampingTempoMap();
+        sequence.merge(trackBuffers);
+        return sequence;
+    }
+    
+    public MidiFileInfo getMidiFileInfo()
+    {
+        return midiFileInfo;
+    }
+    
+    public TempoMap getTempoMap()
+    {
+        return tempoMap;
+    }
+    
+    public int getEventCount()
+    {
+        return eventCount;
+    }
+    
+    public long getTick(int eventIndex)
+    {
+        return ticks[eventIndex];
+    }
+    
+    public long getMicros(int eventIndex)
+    {
+        return tempoMap.tickToMicros(ticks[eventIndex]);
+    }
+    
+    public int getStatus(int eventIndex)
+    {
+        return packedStatusData[eventIndex]>>>16;
+    }
+    
+    public int getData1(int eventIndex)
+    {
+        return (packedStatusData[eventIndex]>>8) & 0xFF;
+    }
+    
+    public int getData2(int eventIndex)
+    {
+        return packedStatusData[eventIndex] & 0xFF;
+    }
+    
+    public int getTrackNumber(int eventIndex)
+    {
+        return trackNumbers[eventIndex];
+    }
+    
+    public int getPayloadLength(int eventIndex)
+    {
+        int payloadEventIndex = Arrays.binarySearch(payloadEventIndices,eventIndex);
+        return payloadEventIndex<0 ? 0 : payloadOffsets[payloadEventIndex + 1] - payloadOffsets[payloadEventIndex];
+    }
+    
+    public int copyPayload(int eventIndex,byte[] destination,int offset)
+    {
+        int payloadEventIndex = Arrays.binarySearch(payloadEventIndices,eventIndex);
+        if (payloadEventIndex<0)
+            return 0;
+        int payloadLength = payloadOffsets[payloadEventIndex + 1] - payloadOffsets[payloadEventIndex];
+        System.arraycopy(payloadArena,payloadOffsets[payloadEventIndex],destination,offset,payloadLength);
+        return payloadLength;
+    }
+    
+    // The delta time of the returned event is relative to the preceding event of the sequence.
+    public MidiEvent getMidiEvent(int eventIndex)
+    {
+        int payloadEventIndex = Arrays.binarySearch(payloadEventIndices,eventIndex);
+        return createMidiEvent(eventIndex,payloadEventIndex<0 ? -1 : payloadEventIndex);
+    }
+    
+    public Iterator<MidiEvent> iterator()
+    {
+        return new PackedMidiEventIterator();
+    }
+    
+    public long getFootprintBytes()
+    {
+        return eventCount*(8L + 4 + 2) + payloadEventIndices.length*8L + 4 + payloadArena.length;
+    }
+    
+    
+    private class PackedMidiEventIterator implements Iterator<MidiEvent>
+    {
+        private int eventIndex = 0,payloadEventIndex = 0;
+        
+        public boolean hasNext()
+        {
+            return eventIndex<eventCount;
+        }
+        
+        public MidiEvent next()
+        {
+            boolean payloadEvent = (payloadEventIndex<payloadEventIndices.length) && (payloadEventIndices[payloadEventIndex]==eventIndex);
+            return createMidiEvent(eventIndex++,payloadEvent ? payloadEventIndex++ : -1);
+        }
+        
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    
+    // The events of one track from its current position, in the same layout as the sequence without the track numbers.
+    private static class TrackBuffer
+    {
+        private int eventCount = 0,payloadEventCount = 0,payloadArenaLength = 0;
+        private long[] ticks = new long[256];
+        private int[] packedStatusData = new int[256],payloadOffsets = new int[16];
+        private byte[] payloadArena = new byte[256];
+        
+        // Tempo changes are added to the given map if it is not null.
+        public TrackBuffer(MidiTrackReader trackReader,TempoMap tempoMap) throws IOException, MidiFileFormatException
+        {
+            MidiEventFilter eventFilter = trackReader.getEventFilter();
+            if (trackReader.isTrackEndReached() || ((eventFilter!=null) && ! eventFilter.acceptsTrack(trackReader.getTrackNumber())))
+                return;
+            for ( ; ; trackReader.decodeNextEvent())
+            {
+                if ((tempoMap!=null) && trackReader.isTempoChange())
+                    tempoMap.addTempoChange(trackReader.getRunningTotalTime(),trackReader.getTempo());
+                if (eventFilter!=null)
+                {
+                    if (eventFilter.isPastTickRange(trackReader.getRunningTotalTime()))
+                        break;
+                    if (! eventFilter.accepts(trackReader.status,trackReader.data1,trackReader.getRunningTotalTime()))
+                    {
+                        trackReader.updateChannelInfo();
+                        if (trackReader.isTrackEnd())
+                            break;
+                        continue;
+                    }
+                }
+                if (eventCount==ticks.length)
+                {
+                    ticks = Arrays.copyOf(ticks,eventCount*2);
+                    packedStatusData = Arrays.copyOf(packedStatusData,eventCount*2);
+                }
+                ticks[eventCount] = trackReader.getRunningTotalTime();
+                packedStatusData[eventCount++] = (trackReader.status<<16) | (trackReader.data1<<8) | (trackReader.data2 & 0xFF);
+                if (trackReader.hasPayload())
+                {
+                    if (payloadEventCount + 1==payloadOffsets.length)
+                        payloadOffsets = Arrays.copyOf(payloadOffsets,payloadOffsets.length*2);
+                    if (payloadArenaLength + trackReader.payloadLength>payloadArena.length)
+                        payloadArena = Arrays.copyOf(payloadArena,Math.max(payloadArena.length*2,payloadArenaLength + trackReader.payloadLength));
+                    System.arraycopy(trackReader.getPayload(),0,payloadArena,payloadArenaLength,trackReader.payloadLength);
+                    payloadOffsets[payloadEventCount++] = payloadArenaLength;
+                    payloadArenaLength+=trackReader.payloadLength;
+                }
+                trackReader.updateChannelInfo();
+                if (trackReader.isTrackEnd())
+                    break;
+            }
+            payloadOffsets[payloadEventCount] = payloadArenaLength;
+        }
+    }
+    
+    
+    // Merges the track buffers in the order of MidiReader's iterator: by tick, then by track number.
+    private void merge(TrackBuffer[] trackBuffers)
+    {
+        int payloadEventCount = 0,payloadArenaLength = 0;
+        for (TrackBuffer trackBuffer : trackBuffers)
+        {
+            eventCount+=trackBuffer.eventCount;
+            payloadEventCount+=trackBuffer.payloadEventCount;
+            payloadArenaLength+=trackBuffer.payloadArenaLength;
+        }
+        ticks = new long[eventCount];
+        packedStatusData = new int[eventCount];
+        trackNumbers = new short[eventCount];
+        payloadEventIndices = new int[payloadEventCount];
+        payloadOffsets = new int[payloadEventCount + 1];
+        payloadArena = new byte[payloadArenaLength];
+        
+        // Per track: the index of its next event and of its next meta event. The heap holds the tracks with events left.
+        int[] eventIndices = new int[trackBuffers.length],payloadEventIndicesByTrack = new int[trackBuffers.length];
+        int[] heap = new int[trackBuffers.length];
+        int heapSize = 0;
+        for (int trackNumber=0; trackNumber<trackBuffers.length; trackNumber++)
+            if (trackBuffers[trackNumber].eventCount>0)
+                heap[heapSize++] = trackNumber;
+        for (int i=heapSize/2 - 1; i>=0; i--)
+            siftDown(heap,heapSize,i,trackBuffers,eventIndices);
+        
+        int payloadEventIndex = 0;
+        payloadArenaLength = 0;
+        for (int eventIndex=0; eventIndex<eventCount; eventIndex++)
+        {
+            int trackNumber = heap[0];
+            TrackBuffer trackBuffer = trackBuffers[trackNumber];
+            int trackEventIndex = eventIndices[trackNumber]++;
+            long tick = trackBuffer.ticks[trackEventIndex];
+            int packedEvent = trackBuffer.packedStatusData[trackEventIndex];
+            ticks[eventIndex] = tick;
+            packedStatusData[eventIndex] = packedEvent;
+            trackNumbers[eventIndex] = (short) trackNumber;
+            if ((packedEvent>>>16)>=MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE)
+            {
+                int trackPayloadEventIndex = payloadEventIndicesByTrack[trackNumber]++;
+                int payloadStart = trackBuffer.payloadOffsets[trackPayloadEventIndex],payloadLength = trackBuffer.payloadOffsets[trackPayloadEventIndex + 1] - payloadStart;
+                System.arraycopy(trackBuffer.payloadArena,payloadStart,payloadArena,payloadArenaLength,payloadLength);
+                payloadEventIndices[payloadEventIndex] = eventIndex;
+                payloadOffsets[payloadEventIndex++] = payloadArenaLength;
+                payloadArenaLength+=payloadLength;
+            }
+            if (eventIndices[trackNumber]==trackBuffer.eventCount)
+                heap[0] = heap[--heapSize];
+            siftDown(heap,heapSize,0,trackBuffers,eventIndices);
+        }
+        payloadOffsets[payloadEventIndex] = payloadArenaLength;
+    }
+    
+    private static void siftDown(int[] heap,int heapSize,int index,TrackBuffer[] trackBuffers,int[] eventIndices)
+    {
+        if (index>=heapSize)
+            return;
+        int trackNumber = heap[index];
+        int childIndex;
+        while ((childIndex = 2*index + 1)<heapSize)
+        {
+            if ((childIndex + 1<heapSize) && precedes(heap[childIndex + 1],heap[childIndex],trackBuffers,eventIndices))
+                childIndex++;
+            if (! precedes(heap[childIndex],trackNumber,trackBuffers,eventIndices))
+                break;
+            heap[index] = heap[childIndex];
+            index = childIndex;
+        }
+        heap[index] = trackNumber;
+    }
+    
+    private static boolean precedes(int trackNumber,int otherTrackNumber,TrackBuffer[] trackBuffers,int[] eventIndices)
+    {
+        long tick = trackBuffers[trackNumber].ticks[eventIndices[trackNumber]],otherTick = trackBuffers[otherTrackNumber].ticks[eventIndices[otherTrackNumber]];
+        return (tick<otherTick) || ((tick==otherTick) && (trackNumber<otherTrackNumber));
+    }
+    
+    private MidiEvent createMidiEvent(int eventIndex,int payloadEventIndex)
+    {
+        long tick = ticks[eventIndex];
+        int packedEvent = packedStatusData[eventIndex];
+        int status = packedEvent>>>16;
+        ByteBuffer payload = null;
+        if (payloadEventIndex>=0)
+            payload = ByteBuffer.wrap(payloadArena).slice(payloadOffsets[payloadEventIndex],payloadOffsets[payloadEventIndex + 1] - payloadOffsets[payloadEventIndex]).asReadOnlyBuffer();
+        MidiEvent midiEvent = MidiTrackReader.createMidiEvent(status,(packedEvent>>8) & 0xFF,packedEvent & 0xFF,(int) (tick - (eventIndex==0 ? startTick : ticks[eventIndex - 1])),tick,status<0xF0 ? getChannel(trackNumbers[eventIndex],status & 0x0F) : null,payload);
+        midiEvent.setTotalMicroseconds(tempoMap.tickToMicros(tick));
+        return midiEvent;
+    }
+    
+    private Channel getChannel(int trackNumber,int channelNumber)
+    {
+        Channel channel = channels[trackNumber][channelNumber];
+        if (channel==null)
+        {
+            MidiTrackInfo trackInfo = midiFileInfo.getTrackInfo(trackNumber);
+            channel = trackInfo==null ? null : trackInfo.getChannel(channelNumber);
+            channels[trackNumber][channelNumber] = channel = (channel==null ? new Channel(trackNumber,channelNumber) : channel);
+        }
+        return channel;
+    }
+}
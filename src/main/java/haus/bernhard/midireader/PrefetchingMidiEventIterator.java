@@ -0,0 +1,267 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Iterates over the events of a MidiReader like its iterator(), but the tracks are decoded on a background thread into one
+// bounded ring per track, so that I/O and decoding stalls do not hit the consuming thread until a ring runs empty. A decoding
+// error is thrown to the consumer (wrapped in a RuntimeException, like the reader's iterator does) when it reaches the track.
+public class PrefetchingMidiEventIterator implements Iterator<MidiEvent>,Closeable
+{
+    // Upper bound for a park of the consumer, in case a wake-up is missed. The producer parks until the consumer or close() unparks it.
+    private static final long MAX_PARK_NANOS = 100000;
+    // How long close() waits for a background thread that reads a stream, which may be blocked in the stream's read.
+    private static final long STREAM_CLOSE_TIMEOUT_MILLIS = 1000;
+    
+    private EventRing[] rings;
+    private Iterator<MidiEvent> mergedIterator;
+    private Thread producerThread;
+    private boolean readsStream;
+    private volatile Thread waitingConsumer = null;
+    private volatile boolean closed = false;
+    private volatile Throwable failure = null;
+    private volatile long consumerStallCount = 0,producerStallCount = 0;
+    private volatile int maxOccupancy = 0;
+    
+    PrefetchingMidiEventIterator(MidiReader reader,Iterator<MidiEvent>[] trackIterators,int bufferCapacity) throws IOException, MidiFileFormatException
+    {
+        if (bufferCapacity<=0)
+            throw new IllegalArgumentException("The buffer capacity must be positive: "+bufferCapacity);
+        rings = new EventRing[trackIterators.length];
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Iterator<MidiEvent>[] ringIterators = new Iterator[trackIterators.length];
+        for (int trackNumber=0; trackNumber<trackIterators.length; trackNumber++)
+        {
+            rings[trackNumber] = new EventRing(bufferCapacity);
+            ringIterators[trackNumber] = new RingIterator(rings[trackNumber],trackNumber);
+        }
+        readsStream = reader.getTrackChunks()==null;
+        producerThread = new Thread(() -> produce(trackIterators),"midireader-prefetch");
+        producerThread.setDaemon(true);
+        producerThread.start();
+        mergedIterator = reader.mergeTracks(ringIterators,reader.getStartTick(),reader.getRecorder());
+    }
+    
+    public boolean hasNext()
+    {
+        return mergedIterator.hasNext();
+    }
+    
+    public MidiEvent next()
+    {
+        return mergedIterator.next();
+    }
+    
+    // Stops the background decoding and waits for the background thread to end, since it reads buffers that the reader releases
+    // when it is closed. A background thread that reads a single-track file from a stream decodes from no such buffers but may be
+    // blocked in the stream's read, so it is interrupted (which ends the read of an interruptible channel, closing the channel) and
+    // waited for at most STREAM_CLOSE_TIMEOUT_MILLIS; if the read is still blocked then, the thread ends once it returns. The iterator
+    // must not be used afterwards. Closing the reader closes its prefetching iterators as well, after closing such a stream.
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(producerThread);
+        if (readsStream)
+            producerThread.interrupt();
+        long deadlineNanos = System.nanoTime() + STREAM_CLOSE_TIMEOUT_MILLIS*1000000;
+        boolean interrupted = false;
+        while (producerThread.isAlive())
+        {
+            try
+            {
+                if (! readsStream)
+                    producerThread.join();
+                else if (deadlineNanos - System.nanoTime()>0)
+                    producerThread.join(Math.max(1,(deadlineNanos - System.nanoTime())/1000000));
+                else
+                    break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+    
+    public int getTrackCount()
+    {
+        return rings.length;
+    }
+    
+    public int getBufferCapacity()
+    {
+        return rings.length==0 ? 0 : rings[0].getCapacity();
+    }
+    
+    // The number of decoded events waiting in the given track's buffer.
+    public int getBufferedEventCount(int trackNumber)
+    {
+        return rings[trackNumber].size();
+    }
+    
+    // The highest number of events that any track's buffer has held.
+    public int getMaxBufferedEventCount()
+    {
+        return maxOccupancy;
+    }
+    
+    // The number of times the consumer found the buffer of the track it needed empty and had to wait.
+    public long getConsumerStallCount()
+    {
+        return consumerStallCount;
+    }
+    
+    // The number of times the background thread found all buffers full and had to wait.
+    public long getProducerStallCount()
+    {
+        return producerStallCount;
+    }
+    
+    
+    private class RingIterator implements Iterator<MidiEvent>
+    {
+        private EventRing ring;
+        private int trackNumber;
+        private MidiEvent nextMidiEvent = null;
+        
+        public RingIterator(EventRing ring,int trackNumber)
+        {
+            this.ring = ring;
+            this.trackNumber = trackNumber;
+        }
+        
+        public boolean hasNext()
+        {
+            JfrEvents.MergeStall stallEvent = null;
+            while ((nextMidiEvent==null) && ((nextMidiEvent = ring.poll())==null))
+            {
+                if (ring.isDrained())
+                {
+                    nextMidiEvent = ring.poll();
+                    break;
+                }
+                checkState();
+                consumerStallCount++;
+                if (stallEvent==null)
+                    stallEvent = JfrEvents.MergeStall.beginIfEnabled();
+                waitingConsumer = Thread.currentThread();
+                LockSupport.unpark(producerThread);
+                if (ring.size()==0)
+                    LockSupport.parkNanos(this,MAX_PARK_NANOS);
+                waitingConsumer = null;
+            }
+            if (stallEvent!=null)
+                stallEvent.finish(trackNumber,ring.getCapacity());
+            if (nextMidiEvent==null)
+                return false;
+            if (ring.size()==ring.getCapacity()/2)
+                LockSupport.unpark(producerThread);
+            return true;
+        }
+        
+        public MidiEvent next()
+        {
+            if (! hasNext())
+                throw new NoSuchElementException();
+            MidiEvent midiEvent = nextMidiEvent;
+            nextMidiEvent = null;
+            return midiEvent;
+        }
+        
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    
+    private void checkState()
+    {
+        Throwable currentFailure = failure;
+        if (currentFailure instanceof RuntimeException)
+            throw (RuntimeException) currentFailure;
+        if (currentFailure instanceof Error)
+            throw (Error) currentFailure;
+        if (closed)
+            throw new IllegalStateException("The iterator has been closed!");
+    }
+    
+    private void produce(Iterator<MidiEvent>[] trackIterators)
+    {
+        try
+        {
+            int activeTrackCount = trackIterators.length;
+            boolean[] finished = new boolean[trackIterators.length];
+            while ((activeTrackCount>0) && (! closed))
+            {
+                boolean progress = false;
+                for (int trackNumber=0; trackNumber<trackIterators.length; trackNumber++)
+                {
+                    if (finished[trackNumber])
+                        continue;
+                    EventRing ring = rings[trackNumber];
+                    Iterator<MidiEvent> trackIterator = trackIterators[trackNumber];
+                    while ((ring.size()<ring.getCapacity()) && (! closed))
+                    {
+                        if (! trackIterator.hasNext())
+                        {
+                            ring.finish();
+                            finished[trackNumber] = true;
+                            activeTrackCount--;
+                            break;
+                        }
+                        ring.offer(trackIterator.next());
+                        progress = true;
+                    }
+                    maxOccupancy = Math.max(maxOccupancy,ring.size());
+                }
+                Thread consumer = waitingConsumer;
+                if (progress && (consumer!=null))
+                    LockSupport.unpark(consumer);
+                if ((! progress) && (activeTrackCount>0))
+                {
+                    // All buffers are full; the consumer unparks this thread once it has drained one of them to half its capacity.
+                    producerStallCount++;
+                    LockSupport.park(this);
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            failure = e;
+        }
+        finally
+        {
+            Thread consumer = waitingConsumer;
+            if (consumer!=null)
+                LockSupport.unpark(consumer);
+        }
+    }
+}
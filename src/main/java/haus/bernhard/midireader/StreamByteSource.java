@@ -0,0 +1,104 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import haus.bernhard.midireader.util.FileHelpers;
+
+final class StreamByteSource extends ByteSource
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private InputStream stream;
+    private byte[] buffer;
+    private int bufferPosition = 0,bufferLimit = 0;
+    
+    public StreamByteSource(InputStream stream)
+    {
+        this(stream,DEFAULT_BUFFER_SIZE);
+    }
+    
+    public StreamByteSource(InputStream stream,int bufferSize)
+    {
+        if (bufferSize<=0)
+            throw new IllegalArgumentException("Buffer size must be positive: "+bufferSize);
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+    }
+    
+    public int read() throws IOException
+    {
+        if ((bufferPosition==bufferLimit) && (! refill()))
+            return -1;
+        return buffer[bufferPosition++] & 0xFF;
+    }
+    
+    public void readFully(byte[] bytes,int offset,int byteCount) throws IOException
+    {
+        int bufferedByteCount = Math.min(byteCount,bufferLimit - bufferPosition);
+        System.arraycopy(buffer,bufferPosition,bytes,offset,bufferedByteCount);
+        bufferPosition+=bufferedByteCount;
+        offset+=bufferedByteCount;
+        byteCount-=bufferedByteCount;
+        if (byteCount>=buffer.length)
+            FileHelpers.readBytes(stream,bytes,offset,byteCount);
+        else if (byteCount>0)
+        {
+            while (bufferLimit - bufferPosition<byteCount)
+                if (! refill())
+                    throw new EOFException("Unexpected end of file");
+            System.arraycopy(buffer,bufferPosition,bytes,offset,byteCount);
+            bufferPosition+=byteCount;
+        }
+    }
+    
+    public void skip(long byteCount) throws IOException
+    {
+        int bufferedByteCount = (int) Math.min(byteCount,bufferLimit - bufferPosition);
+        bufferPosition+=bufferedByteCount;
+        FileHelpers.skipBytes(stream,byteCount - bufferedByteCount);
+    }
+    
+    public void close() throws IOException
+    {
+        stream.close();
+    }
+    
+    private boolean refill() throws IOException
+    {
+        if (bufferPosition==bufferLimit)
+            bufferPosition = bufferLimit = 0;
+        else if (bufferLimit==buffer.length)
+        {
+            System.arraycopy(buffer,bufferPosition,buffer,0,bufferLimit - bufferPosition);
+            bufferLimit-=bufferPosition;
+            bufferPosition = 0;
+        }
+        int byteCount = stream.read(buffer,bufferLimit,buffer.length - bufferLimit);
+        if (byteCount<=0)
+            return false;
+        bufferLimit+=byteCount;
+        return true;
+    }
+}
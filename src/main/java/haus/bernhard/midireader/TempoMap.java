@@ -0,0 +1,139 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.util.Arrays;
+
+public final class TempoMap
+{
+    public static final long DEFAULT_MICROSECONDS_PER_QUARTER_NOTE = 500000;
+    
+    private int ticksPerQuarterNote;
+    private int segmentCount = 1;
+    private long[] startTicks = new long[8];
+    private long[] microsecondsPerQuarterNote = new long[8];
+    // Elapsed time at the start of each segment, multiplied by ticksPerQuarterNote so that it is exact and no rounding error accumulates.
+    private long[] scaledStartMicroseconds = new long[8];
+    
+    TempoMap(int ticksPerQuarterNote)
+    {
+        this.ticksPerQuarterNote = ticksPerQuarterNote;
+        microsecondsPerQuarterNote[0] = DEFAULT_MICROSECONDS_PER_QUARTER_NOTE;
+    }
+    
+    public int getTicksPerQuarterNote()
+    {
+        return ticksPerQuarterNote;
+    }
+    
+    public int getSegmentCount()
+    {
+        return segmentCount;
+    }
+    
+    public long getSegmentStartTick(int segment)
+    {
+        checkSegment(segment);
+        return startTicks[segment];
+    }
+    
+    public long getSegmentStartMicroseconds(int segment)
+    {
+        checkSegment(segment);
+        return scaledStartMicroseconds[segment] / ticksPerQuarterNote;
+    }
+    
+    public long getSegmentMicrosecondsPerQuarterNote(int segment)
+    {
+        checkSegment(segment);
+        return microsecondsPerQuarterNote[segment];
+    }
+    
+    public long getMicrosecondsPerQuarterNote(long tick)
+    {
+        return microsecondsPerQuarterNote[findSegment(startTicks,tick)];
+    }
+    
+    public long tickToMicros(long tick)
+    {
+        int segment = findSegment(startTicks,tick);
+        return (scaledStartMicroseconds[segment] + (tick - startTicks[segment])*microsecondsPerQuarterNote[segment]) / ticksPerQuarterNote;
+    }
+    
+    // Returns the last tick for which tickToMicros() does not exceed the given time, so that the two conversions round-trip.
+    public long microsToTick(long microseconds)
+    {
+        long scaledMicroseconds = (microseconds + 1)*ticksPerQuarterNote - 1;
+        int segment = findSegment(scaledStartMicroseconds,scaledMicroseconds);
+        return startTicks[segment] + (scaledMicroseconds - scaledStartMicroseconds[segment]) / microsecondsPerQuarterNote[segment];
+    }
+    
+    void addTempoChange(long tick,long newMicrosecondsPerQuarterNote)
+    {
+        newMicrosecondsPerQuarterNote = Math.max(1,newMicrosecondsPerQuarterNote);
+        int lastSegment = segmentCount - 1;
+        if (tick<startTicks[lastSegment])
+            throw new IllegalArgumentException("Tempo changes must be added in chronological order");
+        if (tick==startTicks[lastSegment])
+        {
+            microsecondsPerQuarterNote[lastSegment] = newMicrosecondsPerQuarterNote;
+            return;
+        }
+        if (segmentCount==startTicks.length)
+        {
+            startTicks = Arrays.copyOf(startTicks,segmentCount*2);
+            microsecondsPerQuarterNote = Arrays.copyOf(microsecondsPerQuarterNote,segmentCount*2);
+            scaledStartMicroseconds = Arrays.copyOf(scaledStartMicroseconds,segmentCount*2);
+        }
+        startTicks[segmentCount] = tick;
+        microsecondsPerQuarterNote[segmentCount] = newMicrosecondsPerQuarterNote;
+        scaledStartMicroseconds[segmentCount] = scaledStartMicroseconds[lastSegment] + (tick - startTicks[lastSegment])*microsecondsPerQuarterNote[lastSegment];
+        segmentCount++;
+    }
+    
+    private int findSegment(long[] segmentStarts,long value)
+    {
+        int low = 0,high = segmentCount - 1;
+        while (low<high)
+        {
+            int middle = (low + high + 1)>>>1;
+            if (segmentStarts[middle]<=value)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+    
+    private void checkSegment(int segment)
+    {
+        if ((segment<0) || (segment>=segmentCount))
+            throw new IndexOutOfBoundsException("Segment "+segment+" is out of range; segment count is "+segmentCount);
+    }
+    
+    public String toString()
+    {
+        StringBuilder segments = new StringBuilder();
+        for (int segment=0; segment<segmentCount; segment++)
+            segments.append(segment==0 ? "" : ",").append(startTicks[segment]).append('=').append(microsecondsPerQuarterNote[segment]);
+        return getClass().getName()+"[ticksPerQuarterNote="+ticksPerQuarterNote+";segments={"+segments+"}]";
+    }
+}
@@ -0,0 +1,75 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Pool of heap buffers for track chunks read from streams, in power-of-two size classes so that readers of similar files
+// reuse each other's buffers instead of allocating a fresh array per track.
+final class TrackBufferPool
+{
+    static final TrackBufferPool SHARED = new TrackBufferPool(64L << 20);
+    
+    private static final int MIN_SIZE_CLASS = 12; // 4 KiB
+    private static final int MAX_SIZE_CLASS = 30;
+    
+    private long maxPooledBytes;
+    private long pooledBytes = 0;
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ArrayDeque<ByteBuffer>[] freeBuffers = new ArrayDeque[MAX_SIZE_CLASS + 1];
+    
+    public TrackBufferPool(long maxPooledBytes)
+    {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+    
+    // Returns a cleared buffer whose capacity is at least the given one.
+    public synchronized ByteBuffer acquire(int capacity)
+    {
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass>MAX_SIZE_CLASS)
+            return ByteBuffer.allocate(capacity);
+        ArrayDeque<ByteBuffer> buffers = freeBuffers[sizeClass];
+        ByteBuffer buffer = buffers==null ? null : buffers.pollLast();
+        if (buffer==null)
+            return ByteBuffer.allocate(1 << sizeClass);
+        pooledBytes-=buffer.capacity();
+        buffer.clear();
+        return buffer;
+    }
+    
+    public synchronized void release(ByteBuffer buffer)
+    {
+        int sizeClass = Integer.numberOfTrailingZeros(buffer.capacity());
+        if ((buffer.capacity()!=1 << sizeClass) || (sizeClass<MIN_SIZE_CLASS) || (sizeClass>MAX_SIZE_CLASS) || (pooledBytes + buffer.capacity()>maxPooledBytes))
+            return;
+        if (freeBuffers[sizeClass]==null)
+            freeBuffers[sizeClass] = new ArrayDeque<ByteBuffer>();
+        freeBuffers[sizeClass].addLast(buffer);
+        pooledBytes+=buffer.capacity();
+    }
+    
+    private static int getSizeClass(int capacity)
+    {
+        return Math.max(MIN_SIZE_CLASS,32 - Integer.numberOfLeadingZeros(Math.max(capacity - 1,1)));
+    }
+}
@@ -0,0 +1,124 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Sparse index of the decoder state of a track chunk, taken before every CHECKPOINT_INTERVAL-th event.
+final class TrackCheckpoints
+{
+    private static final int CHECKPOINT_INTERVAL = 512;
+    
+    private int count = 0;
+    private int eventCount = 0,firstNoteIndex = -1;
+    private long endTick;
+    private int[] positions = new int[16];
+    private long[] ticks = new long[16];
+    private int[] runningStatuses = new int[16];
+    private ChannelState[] channelStates = new ChannelState[16];
+    
+    public TrackCheckpoints(ByteBuffer trackChunk) throws IOException, MidiFileFormatException
+    {
+        ByteBuffer buffer = trackChunk.duplicate();
+        MidiTrackReader scanner = new MidiTrackReader(new ByteBufferSource(buffer),0);
+        scanner.readTrackHeader();
+        ChannelState channelState = new ChannelState();
+        for (int eventCount=0; ; eventCount++)
+        {
+            if (eventCount % CHECKPOINT_INTERVAL==0)
+                add(buffer.position(),scanner.getRunningTotalTime(),scanner.getRunningStatus(),channelState.snapshot());
+            scanner.decodeNextEvent();
+            if ((firstNoteIndex<0) && scanner.isNoteEvent())
+                firstNoteIndex = eventCount;
+            if (scanner.isTrackEnd())
+            {
+                this.eventCount = eventCount + 1;
+                endTick = scanner.getRunningTotalTime();
+                break;
+            }
+            channelState.update(scanner.status,scanner.data1,scanner.data2);
+        }
+    }
+    
+    // Returns the last checkpoint before which all events lie before the given tick.
+    public int find(long tick)
+    {
+        int low = 0,high = count - 1;
+        while (low<high)
+        {
+            int middle = (low + high + 1)>>>1;
+            if (ticks[middle]<tick)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+    
+    // The number of events that the track's iterator returns: those from the first note up to and including the track end.
+    public int getIteratedEventCount()
+    {
+        return firstNoteIndex<0 ? 0 : eventCount - firstNoteIndex;
+    }
+    
+    public long getEndTick()
+    {
+        return endTick;
+    }
+    
+    public int getPosition(int checkpoint)
+    {
+        return positions[checkpoint];
+    }
+    
+    public long getTick(int checkpoint)
+    {
+        return ticks[checkpoint];
+    }
+    
+    public int getRunningStatus(int checkpoint)
+    {
+        return runningStatuses[checkpoint];
+    }
+    
+    public ChannelState getChannelState(int checkpoint)
+    {
+        return channelStates[checkpoint];
+    }
+    
+    private void add(int position,long tick,int runningStatus,ChannelState channelState)
+    {
+        if (count==positions.length)
+        {
+            positions = Arrays.copyOf(positions,count*2);
+            ticks = Arrays.copyOf(ticks,count*2);
+            runningStatuses = Arrays.copyOf(runningStatuses,count*2);
+            channelStates = Arrays.copyOf(channelStates,count*2);
+        }
+        positions[count] = position;
+        ticks[count] = tick;
+        runningStatuses[count] = runningStatus;
+        channelStates[count] = channelState;
+        count++;
+    }
+}
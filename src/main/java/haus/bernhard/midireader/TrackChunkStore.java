@@ -0,0 +1,114 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+// Holds the track chunks of a file that was read from a stream, so that its tracks can be merged without seeking in the stream.
+// Chunks are kept in pooled heap buffers until their total size reaches the memory limit; the remaining chunks are written to
+// a temporary file (deleted on close) and mapped from there.
+final class TrackChunkStore implements Closeable
+{
+    private static final int SPILL_COPY_SIZE = 64*1024;
+    
+    private TrackBufferPool pool;
+    private long maxHeapBytes;
+    private long heapBytes = 0;
+    private ArrayList<ByteBuffer> heapBuffers = new ArrayList<ByteBuffer>();
+    private FileChannel spillChannel = null;
+    private byte[] copyBuffer = null;
+    
+    public TrackChunkStore(TrackBufferPool pool,long maxHeapBytes)
+    {
+        this.pool = pool;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+    
+    // Reads the next chunk (header included) from the source and returns a buffer that holds exactly that chunk.
+    public ByteBuffer readChunk(ByteSource source) throws IOException, MidiFileFormatException
+    {
+        byte[] header = new byte[8];
+        source.readFully(header,0,8);
+        long chunkLength = (((header[4] & 0xFFL) << 24) | ((header[5] & 0xFF) << 16) | ((header[6] & 0xFF) << 8) | (header[7] & 0xFF)) + 8;
+        if (chunkLength>Integer.MAX_VALUE)
+            throw new MidiFileFormatException("Track chunk too large: "+chunkLength+" bytes");
+        if (heapBytes + chunkLength<=maxHeapBytes)
+            return readHeapChunk(source,header,(int) chunkLength);
+        return readSpilledChunk(source,header,chunkLength);
+    }
+    
+    public void close() throws IOException
+    {
+        for (ByteBuffer buffer : heapBuffers)
+            pool.release(buffer);
+        heapBuffers.clear();
+        heapBytes = 0;
+        if (spillChannel!=null)
+        {
+            spillChannel.close();
+            spillChannel = null;
+        }
+    }
+    
+    
+    private ByteBuffer readHeapChunk(ByteSource source,byte[] header,int chunkLength) throws IOException
+    {
+        ByteBuffer buffer = pool.acquire(chunkLength);
+        heapBuffers.add(buffer);
+        heapBytes+=chunkLength;
+        System.arraycopy(header,0,buffer.array(),buffer.arrayOffset(),8);
+        source.readFully(buffer.array(),buffer.arrayOffset() + 8,chunkLength - 8);
+        return buffer.slice(0,chunkLength);
+    }
+    
+    private ByteBuffer readSpilledChunk(ByteSource source,byte[] header,long chunkLength) throws IOException
+    {
+        if (spillChannel==null)
+        {
+            Path spillFile = Files.createTempFile("midireader",".mtrk");
+            spillChannel = FileChannel.open(spillFile,StandardOpenOption.READ,StandardOpenOption.WRITE,StandardOpenOption.DELETE_ON_CLOSE);
+            copyBuffer = new byte[SPILL_COPY_SIZE];
+        }
+        long chunkStart = spillChannel.size();
+        writeFully(ByteBuffer.wrap(header),chunkStart);
+        for (long copied = 8; copied<chunkLength; )
+        {
+            int count = (int) Math.min(copyBuffer.length,chunkLength - copied);
+            source.readFully(copyBuffer,0,count);
+            writeFully(ByteBuffer.wrap(copyBuffer,0,count),chunkStart + copied);
+            copied+=count;
+        }
+        return spillChannel.map(FileChannel.MapMode.READ_ONLY,chunkStart,chunkLength);
+    }
+    
+    private void writeFully(ByteBuffer bytes,long position) throws IOException
+    {
+        while (bytes.hasRemaining())
+            position+=spillChannel.write(bytes,position);
+    }
+}
@@ -0,0 +1,359 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package haus.bernhard.midireader;
+
+import java.util.Arrays;
+
+import haus.bernhard.midireader.midievent.NoteMidiEvent;
+import haus.bernhard.midireader.midievent.StateChangeMidiEvent;
+
+// Maps the notes of a polyphonic song onto a fixed number of monophonic output voices (such as floppy drives) while streaming, and
+// reports the notes each voice should play to a Listener. A free voice is taken in least-recently-freed order; when there is none,
+// the policy decides whether a sounding note is stolen (ended on its voice to make room) or the new note is dropped. Dropped and
+// stolen notes are not restarted when a voice becomes free again, and a NOTE_ON for a key that is already sounding retriggers its voice.
+//
+// reserveVoices() restricts a channel to a range of voices, which no other channel may use; all other channels share the remaining
+// voices. Every event is handled in constant time: each group of voices keeps its free voices in a queue, its sounding voices in
+// start order and per note number, and a bit set of its sounding note numbers. The allocator is not thread-safe; it implements
+// MidiPlayer.Listener, so it can be driven directly by a MidiPlayer.
+public class VoiceAllocator implements MidiPlayer.Listener
+{
+    public enum Policy { STEAL_OLDEST, LOWEST_NOTE_PRIORITY, HIGHEST_NOTE_PRIORITY, NO_STEALING };
+    
+    public interface Listener
+    {
+        void noteOn(int voice,long tick,int channelNumber,int noteNumber,int velocity);
+        
+        void noteOff(int voice,long tick,int noteNumber);
+    }
+    
+    private static final int MAX_POOL_COUNT = 17;
+    
+    private Listener listener;
+    private Policy policy;
+    private int voiceCount;
+    // Per voice: the pool it belongs to, and the track and key (channel<<7 | note number) it is playing (-1 if it is free). A free
+    // voice is linked to the next one in its pool's free queue by voiceNext; a sounding one to the others of its note number by
+    // voicePrevious/voiceNext, and to the others of its pool in start order by voiceOlder/voiceNewer.
+    private int[] voicePools,voiceTracks,voiceKeys,voiceNext,voicePrevious,voiceOlder,voiceNewer;
+    // Per pool (pool 0 holds the unreserved voices): its voice range, free queue, oldest and newest sounding voice, the first sounding
+    // voice per note number and a bit set of the sounding note numbers.
+    private int poolCount = 1;
+    private int[] poolFirstVoices = new int[MAX_POOL_COUNT],poolVoiceCounts = new int[MAX_POOL_COUNT];
+    private int[] freeHeads = new int[MAX_POOL_COUNT],freeTails = new int[MAX_POOL_COUNT],oldestVoices = new int[MAX_POOL_COUNT],newestVoices = new int[MAX_POOL_COUNT];
+    private int[] noteVoices = new int[MAX_POOL_COUNT*128];
+    private long[] soundingNotes = new long[MAX_POOL_COUNT*2];
+    private int[] channelPools = new int[16];
+    // Per track, created on its first note: the voice of each key (-1 if it has none).
+    private int[][] keyVoices = new int[0][];
+    private int soundingVoiceCount = 0;
+    private long stolenNoteCount = 0,droppedNoteCount = 0;
+    
+    public VoiceAllocator(int voiceCount,Policy policy,Listener listener)
+    {
+        if (voiceCount<=0)
+            throw new IllegalArgumentException("The number of voices must be positive: "+voiceCount);
+        this.voiceCount = voiceCount;
+        this.policy = policy;
+        this.listener = listener;
+        voicePools = new int[voiceCount];
+        voiceTracks = new int[voiceCount];
+        voiceKeys = new int[voiceCount];
+        voiceNext = new int[voiceCount];
+        voicePrevious = new int[voiceCount];
+        voiceOlder = new int[voiceCount];
+        voiceNewer = new int[voiceCount];
+        Arrays.fill(voiceKeys,-1);
+        Arrays.fill(oldestVoices,-1);
+        Arrays.fill(newestVoices,-1);
+        Arrays.fill(noteVoices,-1);
+        poolVoiceCounts[0] = voiceCount;
+        rebuildFreeQueues();
+    }
+    
+    public int getVoiceCount()
+    {
+        return voiceCount;
+    }
+    
+    public Policy getPolicy()
+    {
+        return policy;
+    }
+    
+    public void setPolicy(Policy newPolicy)
+    {
+        policy = newPolicy;
+    }
+    
+    // Reserves the given range of voices for the channel. Channels that reserve the same range share it. Must be called while no notes are sounding.
+    public void reserveVoices(int channelNumber,int firstVoice,int count)
+    {
+        if ((channelNumber<0) || (channelNumber>15))
+            throw new IllegalArgumentException("Channel number must be between 0 and 15: "+channelNumber);
+        if ((firstVoice<0) || (count<=0) || (firstVoice + count>voiceCount))
+            throw new IllegalArgumentException("The voice range "+firstVoice+"+"+count+" is not within the "+voiceCount+" voices");
+        if (channelPools[channelNumber]!=0)
+            throw new IllegalStateException("Channel "+channelNumber+" has reserved voices already!");
+        if (soundingVoiceCount>0)
+            throw new IllegalStateException("Voices cannot be reserved while notes are sounding!");
+        for (int pool=1; pool<poolCount; pool++)
+            if ((poolFirstVoices[pool]==firstVoice) && (poolVoiceCounts[pool]==count))
+            {
+                channelPools[channelNumber] = pool;
+                return;
+            }
+        for (int voice=firstVoice; voice<firstVoice + count; voice++)
+            if (voicePools[voice]!=0)
+                throw new IllegalArgumentException("The voice range "+firstVoice+"+"+count+" overlaps another reservation");
+        int pool = poolCount++;
+        poolFirstVoices[pool] = firstVoice;
+        poolVoiceCounts[pool] = count;
+        poolVoiceCounts[0]-=count;
+        for (int voice=firstVoice; voice<firstVoice + count; voice++)
+            voicePools[voice] = pool;
+        channelPools[channelNumber] = pool;
+        rebuildFreeQueues();
+    }
+    
+    // Returns the note number that the voice is playing, or -1 if it is free.
+    public int getVoiceNote(int voice)
+    {
+        return voiceKeys[voice]<0 ? -1 : voiceKeys[voice] & 0x7F;
+    }
+    
+    public int getSoundingVoiceCount()
+    {
+        return soundingVoiceCount;
+    }
+    
+    public long getStolenNoteCount()
+    {
+        return stolenNoteCount;
+    }
+    
+    public long getDroppedNoteCount()
+    {
+        return droppedNoteCount;
+    }
+    
+    // Handles the notes of a cursor, ending the notes of a channel on All Sound Off/All Notes Off and those of a track at its end.
+    public void onEvent(MidiEventCursor cursor)
+    {
+        int command = cursor.status()>>4;
+        if ((command==9) && (cursor.data2()>0))
+            startNote(cursor.trackNumber(),cursor.channelNumber(),cursor.data1(),cursor.data2(),cursor.tick());
+        else if ((command==8) || (command==9))
+            endNote(cursor.trackNumber(),cursor.channelNumber(),cursor.data1(),cursor.tick());
+        else if ((command==11) && ((cursor.data1()==StateChangeMidiEvent.CONTROL_CHANGE_ALL_SOUND_OFF) || (cursor.data1()==StateChangeMidiEvent.CONTROL_CHANGE_ALL_NOTES_OFF)))
+            endNotes(cursor.trackNumber(),cursor.channelNumber(),cursor.tick());
+        else if ((cursor.type()==MidiEventCursor.EventType.META) && (cursor.data1()==MidiTrackReader.META_TYPE_TRACK_END))
+            endNotes(cursor.trackNumber(),-1,cursor.tick());
+    }
+    
+    public void process(NoteMidiEvent midiEvent)
+    {
+        Channel channel = midiEvent.getChannel();
+        if ((midiEvent.getNoteEventType()==NoteMidiEvent.NoteEventType.NOTE_ON) && (midiEvent.getVelocity()>0))
+            startNote(channel.getTrackNumber(),channel.getChannelNumber(),midiEvent.getNoteNumber(),midiEvent.getVelocity(),midiEvent.getTotalTime());
+        else if (midiEvent.getNoteEventType()!=NoteMidiEvent.NoteEventType.KEY_AFTER_TOUCH)
+            endNote(channel.getTrackNumber(),channel.getChannelNumber(),midiEvent.getNoteNumber(),midiEvent.getTotalTime());
+    }
+    
+    // Ends all sounding notes, e.g. when playback stops or seeks.
+    public void allNotesOff(long tick)
+    {
+        endNotes(-1,-1,tick);
+    }
+    
+    private void startNote(int trackNumber,int channelNumber,int noteNumber,int velocity,long tick)
+    {
+        if (trackNumber>=keyVoices.length)
+            keyVoices = Arrays.copyOf(keyVoices,trackNumber + 1);
+        if (keyVoices[trackNumber]==null)
+        {
+            keyVoices[trackNumber] = new int[16*128];
+            Arrays.fill(keyVoices[trackNumber],-1);
+        }
+        int key = (channelNumber<<7) | noteNumber;
+        int voice = keyVoices[trackNumber][key];
+        if (voice>=0)
+        {
+            unlinkSounding(voice);
+            linkSounding(voice);
+            listener.noteOff(voice,tick,noteNumber);
+            listener.noteOn(voice,tick,channelNumber,noteNumber,velocity);
+            return;
+        }
+        int pool = channelPools[channelNumber];
+        voice = freeHeads[pool];
+        if (voice>=0)
+        {
+            freeHeads[pool] = voiceNext[voice];
+            if (freeHeads[pool]<0)
+                freeTails[pool] = -1;
+        }
+        else
+        {
+            voice = selectVictim(pool,noteNumber);
+            if (voice<0)
+            {
+                droppedNoteCount++;
+                return;
+            }
+            stolenNoteCount++;
+            unlinkSounding(voice);
+            keyVoices[voiceTracks[voice]][voiceKeys[voice]] = -1;
+            listener.noteOff(voice,tick,voiceKeys[voice] & 0x7F);
+        }
+        voiceTracks[voice] = trackNumber;
+        voiceKeys[voice] = key;
+        keyVoices[trackNumber][key] = voice;
+        linkSounding(voice);
+        listener.noteOn(voice,tick,channelNumber,noteNumber,velocity);
+    }
+    
+    private void endNote(int trackNumber,int channelNumber,int noteNumber,long tick)
+    {
+        if ((trackNumber>=keyVoices.length) || (keyVoices[trackNumber]==null))
+            return;
+        int voice = keyVoices[trackNumber][(channelNumber<<7) | noteNumber];
+        if (voice>=0)
+            freeVoice(voice,tick); // Otherwise the note was dropped or stolen, or never started.
+    }
+    
+    // Ends the notes of a track's channel, of all channels of a track (channel -1) or of all tracks (track -1).
+    private void endNotes(int trackNumber,int channelNumber,long tick)
+    {
+        for (int voice=0; voice<voiceCount; voice++)
+            if ((voiceKeys[voice]>=0) && ((trackNumber<0) || (voiceTracks[voice]==trackNumber)) && ((channelNumber<0) || ((voiceKeys[voice]>>7)==channelNumber)))
+                freeVoice(voice,tick);
+    }
+    
+    private int selectVictim(int pool,int noteNumber)
+    {
+        switch (policy)
+        {
+            case STEAL_OLDEST :
+                return oldestVoices[pool];
+            case LOWEST_NOTE_PRIORITY :
+                int highestNote = highestSoundingNote(pool);
+                return highestNote>noteNumber ? noteVoices[pool*128 + highestNote] : -1;
+            case HIGHEST_NOTE_PRIORITY :
+                int lowestNote = lowestSoundingNote(pool);
+                return (lowestNote>=0) && (lowestNote<noteNumber) ? noteVoices[pool*128 + lowestNote] : -1;
+            default :
+                return -1;
+        }
+    }
+    
+    private int highestSoundingNote(int pool)
+    {
+        long high = soundingNotes[pool*2 + 1],low = soundingNotes[pool*2];
+        if (high!=0)
+            return 127 - Long.numberOfLeadingZeros(high);
+        return low!=0 ? 63 - Long.numberOfLeadingZeros(low) : -1;
+    }
+    
+    private int lowestSoundingNote(int pool)
+    {
+        long high = soundingNotes[pool*2 + 1],low = soundingNotes[pool*2];
+        if (low!=0)
+            return Long.numberOfTrailingZeros(low);
+        return high!=0 ? 64 + Long.numberOfTrailingZeros(high) : -1;
+    }
+    
+    private void freeVoice(int voice,long tick)
+    {
+        int noteNumber = voiceKeys[voice] & 0x7F;
+        unlinkSounding(voice);
+        keyVoices[voiceTracks[voice]][voiceKeys[voice]] = -1;
+        voiceKeys[voice] = -1;
+        int pool = voicePools[voice];
+        voiceNext[voice] = -1;
+        if (freeTails[pool]<0)
+            freeHeads[pool] = voice;
+        else
+            voiceNext[freeTails[pool]] = voice;
+        freeTails[pool] = voice;
+        listener.noteOff(voice,tick,noteNumber);
+    }
+    
+    // Adds a voice with its key set as the newest sounding voice of its pool and as the first of its note number.
+    private void linkSounding(int voice)
+    {
+        int pool = voicePools[voice],noteNumber = voiceKeys[voice] & 0x7F,noteSlot = pool*128 + noteNumber;
+        voiceOlder[voice] = newestVoices[pool];
+        voiceNewer[voice] = -1;
+        if (newestVoices[pool]<0)
+            oldestVoices[pool] = voice;
+        else
+            voiceNewer[newestVoices[pool]] = voice;
+        newestVoices[pool] = voice;
+        voicePrevious[voice] = -1;
+        voiceNext[voice] = noteVoices[noteSlot];
+        if (noteVoices[noteSlot]>=0)
+            voicePrevious[noteVoices[noteSlot]] = voice;
+        noteVoices[noteSlot] = voice;
+        soundingNotes[pool*2 + (noteNumber>>6)]|=1L<<noteNumber;
+        soundingVoiceCount++;
+    }
+    
+    // Removes a sounding voice from its pool's start order and note number lists, keeping its key.
+    private void unlinkSounding(int voice)
+    {
+        int pool = voicePools[voice],noteNumber = voiceKeys[voice] & 0x7F,noteSlot = pool*128 + noteNumber;
+        if (voiceOlder[voice]<0)
+            oldestVoices[pool] = voiceNewer[voice];
+        else
+            voiceNewer[voiceOlder[voice]] = voiceNewer[voice];
+        if (voiceNewer[voice]<0)
+            newestVoices[pool] = voiceOlder[voice];
+        else
+            voiceOlder[voiceNewer[voice]] = voiceOlder[voice];
+        if (voicePrevious[voice]<0)
+            noteVoices[noteSlot] = voiceNext[voice];
+        else
+            voiceNext[voicePrevious[voice]] = voiceNext[voice];
+        if (voiceNext[voice]>=0)
+            voicePrevious[voiceNext[voice]] = voicePrevious[voice];
+        if (noteVoices[noteSlot]<0)
+            soundingNotes[pool*2 + (noteNumber>>6)]&=~(1L<<noteNumber);
+        soundingVoiceCount--;
+    }
+    
+    private void rebuildFreeQueues()
+    {
+        Arrays.fill(freeHeads,-1);
+        Arrays.fill(freeTails,-1);
+        for (int voice=0; voice<voiceCount; voice++)
+        {
+            int pool = voicePools[voice];
+            voiceNext[voice] = -1;
+            if (freeTails[pool]<0)
+                freeHeads[pool] = voice;
+            else
+                voiceNext[freeTails[pool]] = voice;
+            freeTails[pool] = voice;
+        }
+    }
+}
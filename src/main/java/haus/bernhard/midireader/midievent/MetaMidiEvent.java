@@ -20,18 +20,41 @@
 
 package haus.bernhard.midireader.midievent;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 public class MetaMidiEvent extends MidiEvent
 {
     public enum MetaEventType { TRACK_SEQ_NUMBER, TEXT, COPYRIGHT_INFO, TRACK_NAME, TRACK_INSTRUMENT_NAME, LYRIC, MARKER, CUE_POINT, TRACK_END, SET_TEMPO, TIME_SIGNATURE, KEY_SIGNATURE, SEQUENCER_INFO, UNKNOWN };
     
+    // Text events in Standard MIDI Files are 8-bit text without a declared encoding; ISO-8859-1 decodes every byte to a character
+    // regardless of the JVM's default charset. Use getContentAsString(Charset) for files known to use another encoding.
+    public static final Charset DEFAULT_TEXT_CHARSET = StandardCharsets.ISO_8859_1;
+    
     private MetaEventType metaEventType;
+    private int metaTypeCode = -1;
+    // The payload is kept as a read-only buffer (a view of the file when it is mapped), and copied into content only when it is asked for as an array.
+    private ByteBuffer payload;
     private byte[] content;
+    private Charset contentCharset;
+    private String contentAsString;
     
     public MetaMidiEvent(int deltaTime,long totalTime,MetaEventType metaEventType,byte[] content)
     {
         super(deltaTime,totalTime);
         this.metaEventType = metaEventType;
         this.content = content;
+        if (content!=null)
+            payload = ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+    
+    public MetaMidiEvent(int deltaTime,long totalTime,int metaTypeCode,MetaEventType metaEventType,ByteBuffer payload)
+    {
+        super(deltaTime,totalTime);
+        this.metaTypeCode = metaTypeCode;
+        this.metaEventType = metaEventType;
+        this.payload = payload;
     }
     
     public MetaEventType getMetaEventType()
@@ -39,14 +62,45 @@ public class MetaMidiEvent extends MidiEvent
         return metaEventType;
     }
     
+    // The type byte as it appears in the file, or -1 if the event was created from a MetaEventType only.
+    public int getMetaTypeCode()
+    {
+        return metaTypeCode;
+    }
+    
+    // Returns a read-only view of the payload, positioned at its start, or null if there is none.
+    public ByteBuffer getPayload()
+    {
+        return payload==null ? null : payload.duplicate();
+    }
+    
     public byte[] getContent()
     {
+        if ((content==null) && (payload!=null))
+        {
+            byte[] newContent = new byte[payload.remaining()];
+            payload.duplicate().get(newContent);
+            content = newContent;
+        }
         return content;
     }
     
     public String getContentAsString()
     {
-        return content==null ? null : new String(content);
+        return getContentAsString(DEFAULT_TEXT_CHARSET);
+    }
+    
+    // Decodes the payload with the given charset; the result for the most recently used charset is cached.
+    public String getContentAsString(Charset charset)
+    {
+        if (payload==null)
+            return null;
+        if (! charset.equals(contentCharset))
+        {
+            contentAsString = charset.decode(payload.duplicate()).toString();
+            contentCharset = charset;
+        }
+        return contentAsString;
     }
     
     public String toString()
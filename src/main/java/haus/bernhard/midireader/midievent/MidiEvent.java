@@ -24,6 +24,7 @@ public abstract class MidiEvent
 {
     private int deltaTime;
     private long totalTime;
+    private long totalMicroseconds = -1;
     
     public MidiEvent(int deltaTime,long totalTime)
     {
@@ -46,6 +47,16 @@ public abstract class MidiEvent
         return totalTime;
     }
     
+    public long getTotalMicroseconds()
+    {
+        return totalMicroseconds;
+    }
+    
+    public void setTotalMicroseconds(long newTotalMicroseconds)
+    {
+        totalMicroseconds = newTotalMicroseconds;
+    }
+    
     public String toString()
     {
         return getClass().getName()+"[deltaTime="+deltaTime+";totalTime="+totalTime+']';
@@ -20,10 +20,61 @@
 
 package haus.bernhard.midireader.midievent;
 
+import java.nio.ByteBuffer;
+
+// A system exclusive message (status 0xF0), or an escape sequence of arbitrary bytes (status 0xF7) such as the continuation of a
+// system exclusive message that was split into packets. The payload is everything after the length, including the terminating 0xF7.
 public class SystemExclusiveMidiEvent extends MidiEvent
 {
+    public static final int STATUS_SYSTEM_EXCLUSIVE = 0xF0,STATUS_ESCAPE = 0xF7;
+    
+    private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    
+    private int status;
+    private ByteBuffer payload;
+    private byte[] data;
+    
     public SystemExclusiveMidiEvent(int deltaTime,long totalTime) 
+    {
+        this(deltaTime,totalTime,STATUS_SYSTEM_EXCLUSIVE,EMPTY_PAYLOAD);
+    }
+    
+    public SystemExclusiveMidiEvent(int deltaTime,long totalTime,int status,ByteBuffer payload) 
     {
         super(deltaTime,totalTime);
+        this.status = status;
+        this.payload = payload;
+    }
+    
+    public int getStatus()
+    {
+        return status;
+    }
+    
+    public boolean isEscape()
+    {
+        return status==STATUS_ESCAPE;
+    }
+    
+    // Returns a read-only view of the payload, positioned at its start.
+    public ByteBuffer getPayload()
+    {
+        return payload.duplicate();
+    }
+    
+    public byte[] getData()
+    {
+        if (data==null)
+        {
+            byte[] newData = new byte[payload.remaining()];
+            payload.duplicate().get(newData);
+            data = newData;
+        }
+        return data;
+    }
+    
+    public String toString()
+    {
+        return super.toString()+"[status="+Integer.toHexString(status)+";length="+payload.remaining()+']';
     }
 }
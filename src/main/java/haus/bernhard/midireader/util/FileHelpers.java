@@ -30,8 +30,34 @@ public class FileHelpers
     
     public static void readBytes(InputStream stream,byte[] b,int byteCount) throws IOException
     {
-        if (stream.read(b,0,byteCount)<byteCount)
-            throw new EOFException("Unexpected end of file");
+        readBytes(stream,b,0,byteCount);
+    }
+    
+    public static void readBytes(InputStream stream,byte[] b,int offset,int byteCount) throws IOException
+    {
+        while (byteCount>0)
+        {
+            int readByteCount = stream.read(b,offset,byteCount);
+            if (readByteCount<0)
+                throw new EOFException("Unexpected end of file");
+            offset+=readByteCount;
+            byteCount-=readByteCount;
+        }
+    }
+    
+    public static void skipBytes(InputStream stream,long byteCount) throws IOException
+    {
+        while (byteCount>0)
+        {
+            long skippedByteCount = stream.skip(byteCount);
+            if (skippedByteCount<=0)
+            {
+                if (stream.read()==-1)
+                    throw new EOFException("Unexpected end of file");
+                skippedByteCount = 1;
+            }
+            byteCount-=skippedByteCount;
+        }
     }
     
     public static boolean bytesMatch(byte[] expectedBytes,byte[] bytes)
@@ -0,0 +1,174 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+import haus.bernhard.midireader.midievent.MidiEvent;
+
+// Compares the entries of a MidiFileCache with what MidiReader reads from the same files.
+public class MidiFileCacheTest
+{
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void entryMatchesTheReader() throws Exception
+    {
+        Path file = writeFile("song.mid",0);
+        CachedMidiFile cachedMidiFile = new MidiFileCache(directory.resolve("cache"),1L << 20).open(file);
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            assertEquals(reader.getMidiFileInfo().toString(),cachedMidiFile.getMidiFileInfo().toString());
+            TempoMap tempoMap = reader.getTempoMap();
+            assertEquals(tempoMap.getSegmentCount(),cachedMidiFile.getTempoMap().getSegmentCount());
+            for (int segment=0; segment<tempoMap.getSegmentCount(); segment++)
+            {
+                assertEquals(tempoMap.getSegmentStartTick(segment),cachedMidiFile.getTempoMap().getSegmentStartTick(segment));
+                assertEquals(tempoMap.getSegmentMicrosecondsPerQuarterNote(segment),cachedMidiFile.getTempoMap().getSegmentMicrosecondsPerQuarterNote(segment));
+            }
+            List<String> events = toStrings(reader.iterator());
+            assertEquals(events,toStrings(cachedMidiFile.iterator()));
+            assertEquals(events.size(),cachedMidiFile.getEventCount());
+        }
+    }
+    
+    @Test
+    public void hitReusesTheEntry() throws Exception
+    {
+        Path file = writeFile("song.mid",0);
+        MidiFileCache cache = new MidiFileCache(directory.resolve("cache"),1L << 20);
+        List<String> events = toStrings(cache.open(file).iterator());
+        Path entry = getOnlyEntry(cache);
+        byte[] entryBytes = Files.readAllBytes(entry);
+        ByteBuffer header = ByteBuffer.wrap(entryBytes);
+        assertEquals("MRCX",new String(entryBytes,0,4,StandardCharsets.US_ASCII));
+        assertEquals(MidiFileCache.FORMAT_VERSION,header.getInt(4));
+        
+        assertEquals(events,toStrings(cache.open(file).iterator()));
+        assertEquals(entry,getOnlyEntry(cache));
+        assertArrayEquals(entryBytes,Files.readAllBytes(entry));
+    }
+    
+    @Test
+    public void changedFileReplacesTheEntry() throws Exception
+    {
+        Path file = writeFile("song.mid",0);
+        MidiFileCache cache = new MidiFileCache(directory.resolve("cache"),1L << 20);
+        List<String> oldEvents = toStrings(cache.open(file).iterator());
+        writeFile("song.mid",1);
+        List<String> newEvents = toStrings(cache.open(file).iterator());
+        assertFalse(oldEvents.equals(newEvents));
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            assertEquals(toStrings(reader.iterator()),newEvents);
+        }
+    }
+    
+    @Test
+    public void corruptEntryIsRewritten() throws Exception
+    {
+        Path file = writeFile("song.mid",0);
+        MidiFileCache cache = new MidiFileCache(directory.resolve("cache"),1L << 20);
+        List<String> events = toStrings(cache.open(file).iterator());
+        Path entry = getOnlyEntry(cache);
+        byte[] entryBytes = Files.readAllBytes(entry);
+        Files.write(entry,Arrays.copyOf(entryBytes,entryBytes.length/2));
+        assertEquals(events,toStrings(cache.open(file).iterator()));
+        assertArrayEquals(entryBytes,Files.readAllBytes(entry));
+    }
+    
+    @Test
+    public void writeEvictsOtherEntriesBeyondTheLimit() throws Exception
+    {
+        MidiFileCache cache = new MidiFileCache(directory.resolve("cache"),1);
+        cache.open(writeFile("first.mid",0));
+        Path second = writeFile("second.mid",1);
+        cache.open(second);
+        Path entry = getOnlyEntry(cache);
+        cache.invalidate(second);
+        assertFalse(Files.exists(entry));
+    }
+    
+    
+    // Two tracks with a tempo change, text and a system exclusive message; the variant changes the notes.
+    private Path writeFile(String fileName,int variant) throws IOException
+    {
+        Path file = directory.resolve(fileName);
+        try (MidiWriter writer = new MidiWriter(file.toString(),MidiFileFormat.MultipleTracksSynchronous,480))
+        {
+            writer.startTrack();
+            byte[] name = "Song".getBytes(StandardCharsets.US_ASCII);
+            writer.writeMetaEvent(0,MidiTrackReader.META_TYPE_TRACK_NAME,name,0,name.length);
+            writer.writeMetaEvent(0,MidiTrackReader.META_TYPE_SET_TEMPO,new byte[] { 0x07, (byte) 0xA1, 0x20 },0,3);
+            writer.writeMetaEvent(960,MidiTrackReader.META_TYPE_SET_TEMPO,new byte[] { 0x06, 0x1A, (byte) 0x80 },0,3);
+            writer.startTrack();
+            writer.writeChannelEvent(0,0xB0,7,90);
+            writer.writeChannelEvent(0,0xC0,12,0);
+            writer.writeSystemExclusiveEvent(0,MidiTrackReader.STATUS_SYSTEM_EXCLUSIVE,new byte[] { 0x7E, 0x7F, 0x09, 0x01, (byte) 0xF7 },0,5);
+            for (int note=0; note<200; note++)
+            {
+                writer.writeChannelEvent(note*120,0x90,48 + (note + variant) % 24,100);
+                writer.writeChannelEvent(note*120 + 100,0x80,48 + (note + variant) % 24,0);
+            }
+            writer.writeMetaEvent(24000,1,name,0,name.length);
+            writer.writeChannelEvent(24000,0xE0,0,64);
+        }
+        return file;
+    }
+    
+    private static Path getOnlyEntry(MidiFileCache cache) throws IOException
+    {
+        try (Stream<Path> entries = Files.list(cache.getDirectory()))
+        {
+            List<Path> entryList = entries.toList();
+            assertEquals(1,entryList.size());
+            assertTrue(entryList.get(0).toString().endsWith(".mrcx"));
+            return entryList.get(0);
+        }
+    }
+    
+    private static List<String> toStrings(Iterator<MidiEvent> iterator)
+    {
+        List<String> events = new ArrayList<String>();
+        while (iterator.hasNext())
+            events.add(iterator.next().toString());
+        return events;
+    }
+}
@@ -0,0 +1,192 @@
+//Copyright (c) 2026 Bernhard Haeussermann
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package haus.bernhard.midireader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import haus.bernhard.midireader.MidiFileInfo.MidiFileFormat;
+
+// Writes files with MidiWriter and reads them back with MidiReader.
+public class MidiWriterTest
+{
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void encodesRunningStatusAndDeltaTimeBoundaries() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MidiWriter writer = new MidiWriter(Channels.newChannel(bytes),MidiFileFormat.SingleTrack,1,96))
+        {
+            writer.startTrack();
+            writer.writeChannelEvent(0,0x90,60,100);
+            writer.writeChannelEvent(0x7F,0x90,62,100);
+            writer.writeChannelEvent(0x7F + 0x80,0x80,60,0);
+            writer.writeChannelEvent(0x7F + 0x80 + 0x3FFF,0x80,62,0);
+            writer.writeMetaEvent(0x7F + 0x80 + 0x3FFF + 0x4000,1,new byte[] { 'a' },0,1);
+            writer.writeChannelEvent(0x7F + 0x80 + 0x3FFF + 0x4000,0x80,64,0);
+            writer.writeChannelEvent(0x7F + 0x80 + 0x3FFF + 0x4000 + 0x200000,0xC0,5,0);
+            writer.writeChannelEvent(0x7F + 0x80 + 0x3FFF + 0x4000 + 0x200000,0xC0,6,0);
+        }
+        byte[] track = new byte[] {
+            0x00, (byte) 0x90, 60, 100,
+            0x7F, 62, 100,                                          // Running status after a delta-time of 0x7F.
+            (byte) 0x81, 0x00, (byte) 0x80, 60, 0,
+            (byte) 0xFF, 0x7F, 62, 0,
+            (byte) 0x81, (byte) 0x80, 0x00, (byte) 0xFF, 0x01, 0x01, 'a',
+            0x00, (byte) 0x80, 64, 0,                               // The meta event cancelled running status.
+            (byte) 0x81, (byte) 0x80, (byte) 0x80, 0x00, (byte) 0xC0, 5,
+            0x00, 6,
+            0x00, (byte) 0xFF, 0x2F, 0x00
+        };
+        ByteBuffer expected = ByteBuffer.allocate(22 + track.length);
+        expected.put("MThd".getBytes(StandardCharsets.US_ASCII)).putInt(6).putShort((short) 0).putShort((short) 1).putShort((short) 96);
+        expected.put("MTrk".getBytes(StandardCharsets.US_ASCII)).putInt(track.length).put(track);
+        assertArrayEquals(expected.array(),bytes.toByteArray());
+        
+        List<String> events = readEvents(new MidiReader(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(List.of("0:0:144:60:100","127:0:144:62:100","255:0:128:60:0","16638:0:128:62:0","33022:0:255:1:0","33022:0:128:64:0",
+                "2130174:0:192:5:0","2130174:0:192:6:0","2130174:0:255:47:0"),events);
+    }
+    
+    @Test
+    public void patchesTrackLengthsAndCountAfterFlushing() throws Exception
+    {
+        Path file = directory.resolve("patched.mid");
+        try (MidiWriter writer = new MidiWriter(file.toString(),MidiFileFormat.MultipleTracksSynchronous,480))
+        {
+            writeTracks(writer);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        assertEquals(2,header.getShort(10));
+        int offset = 14,trackCount = 0;
+        while (offset<bytes.length)
+        {
+            assertEquals("MTrk",new String(bytes,offset,4,StandardCharsets.US_ASCII));
+            offset+=8 + header.getInt(offset + 4);
+            trackCount++;
+        }
+        assertEquals(bytes.length,offset);
+        assertEquals(2,trackCount);
+        
+        try (MidiReader reader = new MidiReader(file.toString()))
+        {
+            assertEquals(2,reader.getMidiFileInfo().getNumberOfTracks());
+            List<String> events = readEvents(reader);
+            assertEquals(40003,events.size());
+            assertEquals("39999:1:145:61:1",events.get(events.size() - 2));
+        }
+    }
+    
+    @Test
+    public void writesTheSameBytesToChannelsThatAreNotSeekable() throws Exception
+    {
+        Path file = directory.resolve("seekable.mid");
+        try (MidiWriter writer = new MidiWriter(file.toString(),MidiFileFormat.MultipleTracksSynchronous,480))
+        {
+            writeTracks(writer);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MidiWriter writer = new MidiWriter(Channels.newChannel(bytes),MidiFileFormat.MultipleTracksSynchronous,2,480))
+        {
+            writeTracks(writer);
+        }
+        assertArrayEquals(Files.readAllBytes(file),bytes.toByteArray());
+    }
+    
+    @Test
+    public void copiesTracksUnchanged() throws Exception
+    {
+        Path file = directory.resolve("original.mid"),copy = directory.resolve("copy.mid");
+        try (MidiWriter writer = new MidiWriter(file.toString(),MidiFileFormat.MultipleTracksSynchronous,480))
+        {
+            writeTracks(writer);
+        }
+        try (MidiReader reader = new MidiReader(file.toString());
+             MidiWriter writer = new MidiWriter(copy.toString(),MidiFileFormat.MultipleTracksSynchronous,480))
+        {
+            writer.writeTracks(reader);
+        }
+        assertArrayEquals(Files.readAllBytes(file),Files.readAllBytes(copy));
+    }
+    
+    @Test
+    public void checksTheDeclaredTrackCount() throws Exception
+    {
+        MidiWriter tooFew = new MidiWriter(Channels.newChannel(new ByteArrayOutputStream()),MidiFileFormat.MultipleTracksSynchronous,2,96);
+        tooFew.startTrack();
+        assertThrows(IllegalStateException.class,tooFew::close);
+        
+        try (MidiWriter tooMany = new MidiWriter(Channels.newChannel(new ByteArrayOutputStream()),MidiFileFormat.MultipleTracksSynchronous,1,96))
+        {
+            tooMany.startTrack();
+            assertThrows(IllegalStateException.class,tooMany::startTrack);
+        }
+        assertThrows(IllegalArgumentException.class,() -> new MidiWriter(Channels.newChannel(new ByteArrayOutputStream()),MidiFileFormat.SingleTrack,2,96));
+        assertThrows(IllegalArgumentException.class,() -> new MidiWriter(Channels.newChannel(new ByteArrayOutputStream()),MidiFileFormat.MultipleTracksSynchronous,-1,96));
+    }
+    
+    @Test
+    public void leavesTheFileAloneForInvalidArguments() throws Exception
+    {
+        Path file = directory.resolve("existing.mid");
+        Files.write(file,new byte[] { 1, 2, 3 });
+        assertThrows(IllegalArgumentException.class,() -> new MidiWriter(file.toString(),MidiFileFormat.SingleTrack,0x8000));
+        assertArrayEquals(new byte[] { 1, 2, 3 },Files.readAllBytes(file));
+    }
+    
+    
+    // A first track that outgrows the writer's buffer, so that its length is patched in the channel, and a short second track.
+    private static void writeTracks(MidiWriter writer) throws IOException
+    {
+        writer.startTrack();
+        for (int tick=0; tick<40000; tick++)
+            writer.writeChannelEvent(tick,0x90,60,(tick % 127) + 1);
+        writer.startTrack();
+        writer.writeChannelEvent(39999,0x91,61,1);
+    }
+    
+    private static List<String> readEvents(MidiReader reader) throws IOException, MidiFileFormatException
+    {
+        List<String> events = new ArrayList<String>();
+        MidiEventCursor cursor = reader.cursor();
+        while (cursor.advance())
+            events.add(cursor.tick()+":"+cursor.trackNumber()+":"+cursor.status()+":"+cursor.data1()+":"+cursor.data2());
+        return events;
+    }
+}